@@ -22,6 +22,7 @@ public class MondoCommandExample extends JavaPlugin {
     private void setupCommandHandlers() {
         MondoCommand base = new MondoCommand();
         getCommand("housebuilder").setExecutor(base);
+        getCommand("housebuilder").setTabCompleter(base);
 
         /** Add sub-commands and their handlers. */
 
@@ -90,5 +91,8 @@ public class MondoCommandExample extends JavaPlugin {
                 }
             });
         // and so on
+
+        // Once everything is registered, freeze the command tree so lookups are fast and thread-safe.
+        base.freeze();
     }
 }
@@ -0,0 +1,139 @@
+package mondocommand;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable trie of color aliases, used to translate a template in one pass.
+ *
+ * <p>The template is scanned left to right; at each position the longest
+ * registered alias starting there is replaced with its color code. This means
+ * the cost of translating a template depends on the template length, not on
+ * how many aliases have been registered.
+ */
+final class AliasTrie {
+    private static final char[] NO_KEYS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private final Node root;
+
+    private AliasTrie(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Build a trie out of a map of aliases.
+     * @param aliases A map of alias text to replacement text.
+     * @return a new AliasTrie.
+     */
+    static AliasTrie build(Map<String, String> aliases) {
+        Builder root = new Builder();
+        for (Map.Entry<String, String> e: aliases.entrySet()) {
+            String alias = e.getKey();
+            if (alias.length() == 0) continue;
+            Builder node = root;
+            for (int i = 0; i < alias.length(); i++) {
+                node = node.child(alias.charAt(i));
+            }
+            node.value = e.getValue();
+        }
+        return new AliasTrie(root.build());
+    }
+
+    /**
+     * Replace every alias found in the template.
+     * @param template A template string.
+     * @return The translated template (the same instance if nothing matched).
+     */
+    String translate(String template) {
+        final int length = template.length();
+        StringBuilder sb = null;
+        int copied = 0;
+        int i = 0;
+        while (i < length) {
+            Node node = root;
+            String value = null;
+            int matchEnd = -1;
+            for (int j = i; j < length; j++) {
+                node = node.child(template.charAt(j));
+                if (node == null) break;
+                if (node.value != null) {
+                    value = node.value;
+                    matchEnd = j + 1;
+                }
+            }
+            if (value == null) {
+                i++;
+                continue;
+            }
+            if (sb == null) {
+                sb = new StringBuilder(length);
+            }
+            sb.append(template, copied, i).append(value);
+            i = copied = matchEnd;
+        }
+        if (sb == null) {
+            return template;
+        }
+        return sb.append(template, copied, length).toString();
+    }
+
+    private static final class Node {
+        final char[] keys;
+        final Node[] children;
+        final String value;
+
+        Node(char[] keys, Node[] children, String value) {
+            this.keys = keys;
+            this.children = children;
+            this.value = value;
+        }
+
+        Node child(char c) {
+            char[] keys = this.keys;
+            int low = 0;
+            int high = keys.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                char k = keys[mid];
+                if (k < c) {
+                    low = mid + 1;
+                } else if (k > c) {
+                    high = mid - 1;
+                } else {
+                    return children[mid];
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class Builder {
+        final TreeMap<Character, Builder> children = new TreeMap<Character, Builder>();
+        String value = null;
+
+        Builder child(char c) {
+            Builder node = children.get(c);
+            if (node == null) {
+                node = new Builder();
+                children.put(c, node);
+            }
+            return node;
+        }
+
+        Node build() {
+            if (children.isEmpty()) {
+                return new Node(NO_KEYS, NO_CHILDREN, value);
+            }
+            char[] keys = new char[children.size()];
+            Node[] nodes = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, Builder> e: children.entrySet()) {
+                keys[i] = e.getKey();
+                nodes[i] = e.getValue().build();
+                i++;
+            }
+            return new Node(keys, nodes, value);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package mondocommand;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * A read-only List view over part of a command's argument array.
+ *
+ * <p>This lets every level of dispatch share the original String[] from
+ * Bukkit instead of copying the arguments into a new list.
+ */
+final class ArgumentList extends AbstractList<String> implements RandomAccess {
+    private final String[] args;
+    private final int offset;
+    private final int size;
+
+    ArgumentList(String[] args, int offset) {
+        this.args = args;
+        this.offset = offset;
+        this.size = args.length - offset;
+    }
+
+    @Override
+    public String get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return args[offset + index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Object[] toArray() {
+        return Arrays.copyOfRange(args, offset, args.length, Object[].class);
+    }
+}
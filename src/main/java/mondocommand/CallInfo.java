@@ -1,8 +1,16 @@
 package mondocommand;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.Validate;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
@@ -18,8 +26,16 @@ public class CallInfo {
     private final String baseCommand;
     private final SubCommand subCommand;
     private final String replyPrefix;
+    private final ColorScope colorScope;
+    private final String timeoutMessage;
 
-    private List<String> args;
+    private final String[] args;
+    private final int argOffset;
+    private final int numArgs;
+    private List<String> argsView = null;
+    /** Replies being batched; guarded by this, since async handlers may reply from several threads. */
+    private List<String> pendingReplies = null;
+    private volatile Executor mainThread = null;
 
     /**
      * Create a new CallInfo representing one command invocation.
@@ -31,15 +47,29 @@ public class CallInfo {
      * @param formatter The formatter being used by our MondoCommand.
      */
     public CallInfo(CommandSender sender, Player player, String baseCommand, SubCommand subCommand, List<String> args, FormatConfig formatter) {
+        this(sender, player, baseCommand, subCommand, args.toArray(new String[args.size()]), 0, formatter.compile());
+    }
+
+    /**
+     * Create a new CallInfo sharing the caller's argument array.
+     * @param args The full argument array; it must not be modified afterwards.
+     * @param argOffset The position in args of this call's first argument.
+     * @param format The compiled FormatConfig being used by our MondoCommand.
+     */
+    CallInfo(CommandSender sender, Player player, String baseCommand, SubCommand subCommand, String[] args, int argOffset, CompiledFormat format) {
         Validate.notNull(sender);
         Validate.notEmpty(baseCommand);
         Validate.notNull(subCommand);
         this.sender = sender;
         this.player = player;
         this.args = args;
+        this.argOffset = argOffset;
+        this.numArgs = args.length - argOffset;
         this.baseCommand = baseCommand;
         this.subCommand = subCommand;
-        this.replyPrefix = ChatMagic.colorize(formatter.getReplyPrefix());
+        this.colorScope = format.colorScope;
+        this.replyPrefix = format.replyPrefix;
+        this.timeoutMessage = format.timeoutMessage;
     }
 
     /**
@@ -64,15 +94,21 @@ public class CallInfo {
      * @return The specific argument requested.
      */
     public String getArg(int index) {
-        return this.args.get(index);
+        if (index < 0 || index >= numArgs) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + numArgs);
+        }
+        return args[argOffset + index];
     }
 
     /**
      * Get the whole list of command arguments.
-     * @return List of arguments.
+     * @return A read-only List of arguments.
      */
     public List<String> getArgs() {
-        return this.args;
+        if (argsView == null) {
+            argsView = new ArgumentList(args, argOffset);
+        }
+        return argsView;
     }
     
     /**
@@ -93,7 +129,25 @@ public class CallInfo {
      * @return A single string containing all the arguments till the end
      */
     public String getJoinedArgsAfter(int index) {
-        return StringUtils.join(args.subList(index, args.size()), " ");
+        if (index < 0 || index > numArgs) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + numArgs);
+        }
+        int start = argOffset + index;
+        if (start == args.length) {
+            return "";
+        } else if (start == args.length - 1) {
+            return args[start];
+        }
+        int length = args.length - start - 1;
+        for (int i = start; i < args.length; i++) {
+            length += args[i].length();
+        }
+        StringBuilder sb = new StringBuilder(length);
+        sb.append(args[start]);
+        for (int i = start + 1; i < args.length; i++) {
+            sb.append(' ').append(args[i]);
+        }
+        return sb.toString();
     }
 
     /**
@@ -101,7 +155,17 @@ public class CallInfo {
      * @return Number of arguments
      */
     public int numArgs() {
-        return this.args.size();
+        return numArgs;
+    }
+
+    /** The full argument array this call's arguments are a view of. */
+    String[] rawArgs() {
+        return args;
+    }
+
+    /** The position of this call's first argument in {@link #rawArgs()}. */
+    int rawArgOffset() {
+        return argOffset;
     }
 
     /**
@@ -131,16 +195,222 @@ public class CallInfo {
     }
 
     /**
-     * Re
+     * Respond to the call, optionally without the reply prefix.
      * @param prefix if True, prefix the message with the formater's prefix.
      * @param template A string template. See {@link ChatMagic} documentation for more info.
      * @param args Zero or more arguments to interpolate the template.
      */
     public void reply(boolean prefix, String template, Object ... args) {
-        if (prefix) {
-            ChatMagic.send(sender, replyPrefix + template, args);
+        sendReply(prefix, colorScope.compile(template), args);
+    }
+
+    /**
+     * Reply with an already compiled template, with the reply prefix.
+     */
+    void reply(ChatTemplate compiled, Object ... args) {
+        sendReply(true, compiled, args);
+    }
+
+    private void sendReply(boolean prefix, ChatTemplate compiled, Object[] args) {
+        String message;
+        if (prefix && replyPrefix.length() > 0) {
+            message = compiled.render(replyPrefix, args);
+        } else {
+            message = compiled.render(args);
+        }
+        synchronized (this) {
+            if (pendingReplies != null) {
+                pendingReplies.add(message);
+                return;
+            }
+        }
+        if (mainThread == null) {
+            sender.sendMessage(message);
+        } else {
+            final String line = message;
+            runOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    sender.sendMessage(line);
+                }
+            });
+        }
+    }
+
+    /**
+     * Collect replies instead of sending each one immediately.
+     *
+     * <p>Handlers which send several lines can call this first; the
+     * collected lines are then sent in a single
+     * {@link CommandSender#sendMessage(String[])} call when the handler
+     * returns, or earlier by calling {@link #flushReplies()}.
+     *
+     * @return the same CallInfo, for chaining.
+     */
+    public synchronized CallInfo batchReplies() {
+        if (pendingReplies == null) {
+            pendingReplies = new ArrayList<String>(4);
+        }
+        return this;
+    }
+
+    /**
+     * Send any replies collected since {@link #batchReplies()} was called.
+     *
+     * <p>Batching stays on; this is a no-op if there's nothing to send.
+     * For an async subcommand, the replies are handed to the main thread
+     * to be sent.
+     */
+    public void flushReplies() {
+        sendLines(takeReplies(false));
+    }
+
+    /**
+     * Send any collected replies and stop batching; called when the handler has returned.
+     *
+     * <p>Replies made after this, say from a callback the handler started,
+     * are sent straight away (through the main thread for async subcommands)
+     * instead of piling up where nobody will flush them.
+     */
+    void finishReplies() {
+        sendLines(takeReplies(true));
+    }
+
+    private synchronized String[] takeReplies(boolean stopBatching) {
+        List<String> pending = pendingReplies;
+        if (stopBatching) {
+            pendingReplies = null;
+        }
+        if (pending == null || pending.isEmpty()) {
+            return null;
+        }
+        String[] lines = pending.toArray(new String[pending.size()]);
+        pending.clear();
+        return lines;
+    }
+
+    private void sendLines(final String[] lines) {
+        if (lines == null) {
+            return;
+        }
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                if (lines.length == 1) {
+                    sender.sendMessage(lines[0]);
+                } else {
+                    sender.sendMessage(lines);
+                }
+            }
+        });
+    }
+
+    /**
+     * Run a task on the server's main thread.
+     *
+     * <p>Handlers of async subcommands should use this for anything which
+     * touches the Bukkit API, other than replying; the task is handed to
+     * the MondoCommand's main thread executor, which async subcommands are
+     * required to have. For other subcommands, which are already on the
+     * main thread, the task simply runs right away.
+     *
+     * @param task The task to run.
+     * @see MondoCommand#setMainThreadExecutor
+     */
+    public void runOnMainThread(Runnable task) {
+        if (mainThread == null) {
+            task.run();
         } else {
-            ChatMagic.send(sender, template, args);
+            mainThread.execute(task);
+        }
+    }
+
+    /**
+     * Run several tasks at once and wait for all their results.
+     *
+     * <p>This is for handlers which need a few independent slow lookups;
+     * rather than waiting for each in turn, they all run in parallel on the
+     * given executor. If any task fails, the others are cancelled and its
+     * exception is rethrown: a MondoFailure or unchecked exception as is,
+     * anything else wrapped in a RuntimeException. If the results aren't all
+     * in by the deadline, the remaining tasks are cancelled and a
+     * MondoFailure with the FormatConfig's timeout message is thrown.
+     *
+     * <p>If the waiting thread is interrupted, say because the plugin is
+     * being disabled and its executor shut down, the tasks are cancelled,
+     * the interrupt flag is set again, and a CancellationException is
+     * thrown; that's not the player's problem, so they aren't told the
+     * lookup timed out.
+     *
+     * <p>This blocks, so it's best used from an async subcommand.
+     *
+     * @param executor The executor to run the tasks on.
+     * @param timeout How long to wait for all the results.
+     * @param unit The unit of timeout.
+     * @param tasks The tasks to run.
+     * @return The results, in the same order as tasks.
+     * @throws MondoFailure if a task threw one, or on timeout.
+     * @throws CancellationException if interrupted while waiting.
+     * @see SubCommand#setAsync
+     */
+    public <T> List<T> fanOut(Executor executor, long timeout, TimeUnit unit, List<? extends Callable<? extends T>> tasks) throws MondoFailure {
+        Validate.notNull(executor);
+        Validate.notNull(unit);
+        Validate.noNullElements(tasks);
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        CompletionService<T> completion = new ExecutorCompletionService<T>(executor);
+        List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+        boolean done = false;
+        try {
+            for (final Callable<? extends T> task: tasks) {
+                futures.add(completion.submit(new Callable<T>() {
+                    @Override
+                    public T call() throws Exception {
+                        return task.call();
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                Future<T> finished = completion.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (finished == null) {
+                    throw new MondoFailure("%s", timeoutMessage);
+                }
+                finished.get();
+            }
+            List<T> results = new ArrayList<T>(futures.size());
+            for (Future<T> future: futures) {
+                results.add(future.get());
+            }
+            done = true;
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            CancellationException cancelled = new CancellationException("Interrupted while waiting for results");
+            cancelled.initCause(e);
+            throw cancelled;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof MondoFailure) {
+                throw (MondoFailure) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            if (!done) {
+                for (Future<T> future: futures) {
+                    future.cancel(true);
+                }
+            }
         }
     }
+
+    /**
+     * Set the executor used to get back to the main thread; used for async subcommands.
+     */
+    void setMainThread(Executor mainThread) {
+        this.mainThread = mainThread;
+    }
 }
@@ -1,9 +1,5 @@
 package mondocommand;
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
-
 import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.conversations.Conversable;
@@ -21,25 +17,38 @@ import org.bukkit.conversations.Conversable;
  * colors available in the {@link ChatColor} class into useful interpolation
  * strings like <tt>{BLUE}</tt>.
  * 
- * <p>For speed, the template strings are cached in a dictionary lookup, so the
- * color interpolation can be done once per template. For this reason, any 
- * variable strings should not be joined into the template string, but should
- *  be provided as <tt>%s</tt>-style interpolations. 
+ * <p>For speed, the template strings are compiled into a {@link ChatTemplate}
+ * and cached in a dictionary lookup, so the color interpolation and parsing
+ * can be done once per template. For this reason, any variable strings should
+ * not be joined into the template string, but should be provided as
+ * <tt>%s</tt>-style interpolations.
+ *
+ * <p>The static methods here use the global {@link ColorScope}. Each
+ * {@link FormatConfig} also has its own scope layered over the global one,
+ * for aliases which should only apply to one MondoCommand.
+ *
+ * <p>All methods on this class are safe to call from any thread.
  * 
  * @see ChatColor
  * @see String#format
  */
 public final class ChatMagic {
-    private static final int SIZE_THRESHOLD = 5000;
-    private static HashMap<String, String> colorMap = new HashMap<String, String>();
-    private static HashMap<String, String> translationMap = new HashMap<String, String>();
+    private static final ColorScope globalScope = new ColorScope(null);
     static {
         for (ChatColor c: ChatColor.values()) {
-            colorMap.put("{" + c.name() + "}", c.toString());
-            colorMap.put("{" + c.name().toLowerCase() + "}", c.toString());
+            globalScope.putAlias("{" + c.name() + "}", c.toString());
+            globalScope.putAlias("{" + c.name().toLowerCase() + "}", c.toString());
         }
     }
 
+    /**
+     * Get the global alias scope, which all other scopes inherit from.
+     * @return The global ColorScope.
+     */
+    public static ColorScope getGlobalScope() {
+        return globalScope;
+    }
+
     /**
      * Register an alias for a color.
      * 
@@ -50,8 +59,7 @@ public final class ChatMagic {
      * @see ChatColor
      */
     public static void registerAlias(String alias, ChatColor color) {
-        colorMap.put(alias, color.toString());
-        translationMap.clear();
+        globalScope.registerAlias(alias, color);
     }
 
     /**
@@ -60,9 +68,7 @@ public final class ChatMagic {
      * @param color A ChatColor.
      */
     public static void registerDefaultAlias(String alias, ChatColor color) {
-        if (!colorMap.containsKey(alias)) {
-            registerAlias(alias, color);
-        }
+        globalScope.registerDefaultAlias(alias, color);
     }
 
     
@@ -73,33 +79,35 @@ public final class ChatMagic {
      * @return A string which has been color-formatted
      */
     public static String colorize(String template, Object ... args) {
-        String translated = translationMap.get(template);
-        if (translated == null) {
-            translated = template;
-            for (Map.Entry<String, String> e: colorMap.entrySet()) {
-                translated = translated.replace(e.getKey(), e.getValue());
-            }
-            translationMap.put(template, translated);
-            if (translationMap.size() > SIZE_THRESHOLD) {
-                cleanup();
-            }
-        }
-        if (args.length > 0) {
-            return String.format(translated, args);
-        } else {
-            return translated;
-        }
-        
+        return globalScope.compile(template).render(args);
     }
-    
-    private static void cleanup() {
-        Iterator<String> it = translationMap.values().iterator();
-        int to_remove = translationMap.size() / 5;
-        while (--to_remove >= 0) {
-            if (!it.hasNext()) break;
-            it.next();
-            it.remove();
-        }
+
+    /**
+     * Get the compiled form of a template, translating it if needed.
+     * @param template A template string in printf-format.
+     * @return A ChatTemplate which can be rendered repeatedly.
+     */
+    public static ChatTemplate compile(String template) {
+        return globalScope.compile(template);
+    }
+
+    /**
+     * Get statistics on the global translation cache.
+     * @param topCount How many of the most used templates to report.
+     * @return a snapshot of the cache statistics.
+     * @see ColorScope#getStats
+     */
+    public static TranslationStats getStats(int topCount) {
+        return globalScope.getStats(topCount);
+    }
+
+    /**
+     * Change how many compiled templates the global scope keeps.
+     * @param cacheSize How many compiled templates to keep before evicting the least used.
+     * @see ColorScope#setCacheSize
+     */
+    public static void setCacheSize(int cacheSize) {
+        globalScope.setCacheSize(cacheSize);
     }
 
     /**
@@ -0,0 +1,364 @@
+package mondocommand;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.Formattable;
+import java.util.Formatter;
+import java.util.List;
+import java.util.Locale;
+import java.util.MissingFormatArgumentException;
+
+/**
+ * A template which has been pre-parsed by {@link ChatMagic}.
+ *
+ * <p>Color aliases are resolved once when the template is compiled, and the
+ * remaining text is split into literal runs and argument slots. Rendering a
+ * template then only needs to copy the literals and stringify the arguments,
+ * instead of re-parsing the format string on every call.
+ *
+ * <p>The conversions MondoCommand templates normally use are rendered
+ * directly: <tt>%s</tt>, <tt>%d</tt>, <tt>%f</tt> with an optional precision
+ * (like <tt>%.2f</tt>), explicit argument indexes like <tt>%1$s</tt>, and the
+ * <tt>%%</tt> and <tt>%n</tt> escapes. Any other specifier (widths, flags,
+ * hex, dates, ...) is handed to a {@link Formatter}, so the output is always
+ * the same as {@link String#format} would give.
+ *
+ * @see ChatMagic#compile
+ */
+public final class ChatTemplate {
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    private static final int DEFAULT_PRECISION = 6;
+
+    private static final byte KIND_STRING = 0;
+    private static final byte KIND_INTEGER = 1;
+    private static final byte KIND_FLOAT = 2;
+    private static final byte KIND_FORMATTER = 3;
+
+    private final String translated;
+    private final String[] literals;
+    private final byte[] kinds;
+    private final int[] argIndexes;
+    private final int[] precisions;
+    private final String[] specs;
+    private final String[] indexedSpecs;
+    private final boolean needsFormatter;
+
+    private static volatile LocaleInfo localeInfo = new LocaleInfo(null, false);
+
+    private ChatTemplate(String translated, String[] literals, byte[] kinds, int[] argIndexes,
+                         int[] precisions, String[] specs, String[] indexedSpecs, boolean needsFormatter) {
+        this.translated = translated;
+        this.literals = literals;
+        this.kinds = kinds;
+        this.argIndexes = argIndexes;
+        this.precisions = precisions;
+        this.specs = specs;
+        this.indexedSpecs = indexedSpecs;
+        this.needsFormatter = needsFormatter;
+    }
+
+    /**
+     * Parse an already color-translated template into literal runs and argument slots.
+     * @param translated A template whose color aliases have already been substituted.
+     * @return a new ChatTemplate.
+     */
+    static ChatTemplate parse(String translated) {
+        List<String> literals = new ArrayList<String>();
+        List<Slot> slots = new ArrayList<Slot>();
+        StringBuilder current = new StringBuilder();
+        int ordinaryIndex = 0;
+        final int length = translated.length();
+        int i = 0;
+        while (i < length) {
+            char c = translated.charAt(i);
+            if (c != '%') {
+                current.append(c);
+                i++;
+                continue;
+            }
+            Slot slot = Slot.parse(translated, i);
+            if (slot == null) {
+                // Malformed or unusual; let java.util.Formatter deal with (or complain about) it.
+                return new ChatTemplate(translated, null, null, null, null, null, null, true);
+            }
+            i = slot.end;
+            if (slot.conversion == '%') {
+                current.append('%');
+                continue;
+            } else if (slot.conversion == 'n') {
+                current.append(LINE_SEPARATOR);
+                continue;
+            }
+            if (slot.explicitIndex < 0) {
+                slot.argIndex = ordinaryIndex++;
+            } else {
+                slot.argIndex = slot.explicitIndex;
+            }
+            literals.add(current.toString());
+            current.setLength(0);
+            slots.add(slot);
+        }
+        literals.add(current.toString());
+
+        int count = slots.size();
+        byte[] kinds = new byte[count];
+        int[] argIndexes = new int[count];
+        int[] precisions = new int[count];
+        String[] specs = new String[count];
+        String[] indexedSpecs = new String[count];
+        for (int n = 0; n < count; n++) {
+            Slot slot = slots.get(n);
+            kinds[n] = slot.kind();
+            argIndexes[n] = slot.argIndex;
+            precisions[n] = (slot.precision < 0) ? DEFAULT_PRECISION : slot.precision;
+            specs[n] = slot.text(translated);
+            indexedSpecs[n] = slot.indexedSpec(translated);
+        }
+        return new ChatTemplate(
+            translated,
+            literals.toArray(new String[literals.size()]),
+            kinds, argIndexes, precisions, specs, indexedSpecs, false
+        );
+    }
+
+    /**
+     * Get the color-translated template text, before any interpolation.
+     * @return The translated template.
+     */
+    public String getTranslated() {
+        return translated;
+    }
+
+    /**
+     * Render this template with the given arguments.
+     *
+     * <p>As with {@link ChatMagic#colorize}, if no arguments are given the
+     * translated template is returned as-is without interpolation.
+     *
+     * @param args As many arguments as are expected by %-interpolations.
+     * @return The rendered string.
+     */
+    public String render(Object ... args) {
+        if (args.length == 0) {
+            return translated;
+        }
+        return render(null, args);
+    }
+
+    /**
+     * Render this template after some already-colorized prefix text.
+     *
+     * <p>This avoids concatenating the prefix onto the template, which
+     * would create a new template (and cache entry) for every prefix.
+     *
+     * @param prefix Literal text to put before the template, or null for none.
+     * @param args As many arguments as are expected by %-interpolations.
+     * @return The rendered string.
+     */
+    String render(String prefix, Object[] args) {
+        int capacity = translated.length() + 16 * args.length + ((prefix == null) ? 0 : prefix.length());
+        StringBuilder sb = new StringBuilder(capacity);
+        if (prefix != null) sb.append(prefix);
+        renderTo(sb, args);
+        return sb.toString();
+    }
+
+    /**
+     * Render this template into an existing StringBuilder.
+     * @param sb The builder to append to.
+     * @param args As many arguments as are expected by %-interpolations.
+     */
+    public void renderTo(StringBuilder sb, Object ... args) {
+        if (args.length == 0) {
+            sb.append(translated);
+            return;
+        } else if (needsFormatter) {
+            new Formatter(sb).format(translated, args);
+            return;
+        }
+        final String[] literals = this.literals;
+        final byte[] kinds = this.kinds;
+        final int count = kinds.length;
+        for (int i = 0; i < count; i++) {
+            sb.append(literals[i]);
+            int index = argIndexes[i];
+            if (index >= args.length) {
+                throw new MissingFormatArgumentException(specs[i]);
+            }
+            Object arg = args[index];
+            switch (kinds[i]) {
+            case KIND_STRING:
+                if (arg instanceof Formattable) break;
+                sb.append(String.valueOf(arg));
+                continue;
+            case KIND_INTEGER:
+                if (!plainLocale()) break;
+                if (arg instanceof Integer || arg instanceof Long || arg instanceof Short || arg instanceof Byte) {
+                    sb.append(((Number) arg).longValue());
+                    continue;
+                } else if (arg instanceof BigInteger) {
+                    sb.append(arg.toString());
+                    continue;
+                }
+                break;
+            case KIND_FLOAT:
+                if (!plainLocale()) break;
+                if (arg instanceof Double || arg instanceof Float) {
+                    double value = ((Number) arg).doubleValue();
+                    if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+                        appendFixed(sb, value, precisions[i]);
+                        continue;
+                    }
+                }
+                break;
+            }
+            // Exotic specifier or argument type; the spec has an explicit index so it can be formatted alone.
+            new Formatter(sb).format(indexedSpecs[i], args);
+        }
+        sb.append(literals[count]);
+    }
+
+    /**
+     * Append a double in %f style; Formatter rounds the shortest decimal representation half-up.
+     */
+    private static void appendFixed(StringBuilder sb, double value, int precision) {
+        if (Double.compare(value, 0.0) < 0) {
+            sb.append('-');
+            value = -value;
+        }
+        sb.append(new BigDecimal(Double.toString(value)).setScale(precision, RoundingMode.HALF_UP).toPlainString());
+    }
+
+    /**
+     * Formatter localizes digits and the decimal point, so we only skip it for locales which use plain ASCII.
+     */
+    private static boolean plainLocale() {
+        Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+        LocaleInfo info = localeInfo;
+        if (info.locale != locale) {
+            DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+            info = new LocaleInfo(locale, symbols.getZeroDigit() == '0' && symbols.getDecimalSeparator() == '.');
+            localeInfo = info;
+        }
+        return info.plain;
+    }
+
+    private static final class LocaleInfo {
+        final Locale locale;
+        final boolean plain;
+
+        LocaleInfo(Locale locale, boolean plain) {
+            this.locale = locale;
+            this.plain = plain;
+        }
+    }
+
+    /**
+     * One format specifier, as matched by java.util.Formatter:
+     * <tt>%[index$][flags][width][.precision]conversion</tt>
+     */
+    private static final class Slot {
+        final int start;
+        final int end;
+        final int explicitIndex;
+        final String flags;
+        final int width;
+        final int precision;
+        final char conversion;
+        int argIndex;
+
+        private Slot(int start, int end, int explicitIndex, String flags, int width, int precision, char conversion) {
+            this.start = start;
+            this.end = end;
+            this.explicitIndex = explicitIndex;
+            this.flags = flags;
+            this.width = width;
+            this.precision = precision;
+            this.conversion = conversion;
+        }
+
+        /**
+         * Parse the specifier at position start, returning null if it's something we won't handle.
+         */
+        static Slot parse(String s, int start) {
+            final int length = s.length();
+            int pos = start + 1;
+            int explicitIndex = -1;
+            int digitsEnd = skipDigits(s, pos);
+            if (digitsEnd > pos && digitsEnd < length && s.charAt(digitsEnd) == '$') {
+                explicitIndex = Integer.parseInt(s.substring(pos, digitsEnd)) - 1;
+                if (explicitIndex < 0) return null;
+                pos = digitsEnd + 1;
+            }
+            int flagsStart = pos;
+            while (pos < length && "-#+ 0,(".indexOf(s.charAt(pos)) >= 0) {
+                pos++;
+            }
+            String flags = s.substring(flagsStart, pos);
+            int width = -1;
+            digitsEnd = skipDigits(s, pos);
+            if (digitsEnd > pos) {
+                width = Integer.parseInt(s.substring(pos, digitsEnd));
+                pos = digitsEnd;
+            }
+            int precision = -1;
+            if (pos < length && s.charAt(pos) == '.') {
+                digitsEnd = skipDigits(s, pos + 1);
+                if (digitsEnd == pos + 1) return null;
+                precision = Integer.parseInt(s.substring(pos + 1, digitsEnd));
+                pos = digitsEnd;
+            }
+            if (pos >= length) return null;
+            char conversion = s.charAt(pos);
+            if ("bBhHsScCdoxXeEfgGaA%n".indexOf(conversion) < 0) {
+                // Date/time, relative indexes and unknown conversions.
+                return null;
+            }
+            Slot slot = new Slot(start, pos + 1, explicitIndex, flags, width, precision, conversion);
+            if ((conversion == '%' || conversion == 'n') && !slot.isPlain()) {
+                return null;
+            }
+            return slot;
+        }
+
+        private static int skipDigits(String s, int pos) {
+            while (pos < s.length() && s.charAt(pos) >= '0' && s.charAt(pos) <= '9') {
+                pos++;
+            }
+            return pos;
+        }
+
+        private boolean isPlain() {
+            return flags.length() == 0 && width < 0 && (precision < 0 || conversion == 'f') && explicitIndex < 0;
+        }
+
+        byte kind() {
+            if (flags.length() != 0 || width >= 0) {
+                return KIND_FORMATTER;
+            } else if (conversion == 's' && precision < 0) {
+                return KIND_STRING;
+            } else if (conversion == 'd' && precision < 0) {
+                return KIND_INTEGER;
+            } else if (conversion == 'f') {
+                return KIND_FLOAT;
+            }
+            return KIND_FORMATTER;
+        }
+
+        String text(String s) {
+            return s.substring(start, end);
+        }
+
+        /** The specifier text rewritten to always use an explicit argument index. */
+        String indexedSpec(String s) {
+            String text = text(s);
+            if (explicitIndex >= 0) {
+                return text;
+            }
+            return "%" + (argIndex + 1) + "$" + text.substring(1);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package mondocommand;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang.Validate;
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+
+/**
+ * A set of color aliases, layered on top of a parent scope.
+ *
+ * <p>The global scope used by the static {@link ChatMagic} methods holds the
+ * {@link ChatColor} names and anything registered through
+ * {@link ChatMagic#registerAlias}. Each {@link FormatConfig} has its own scope
+ * on top of that, so aliases set on one config don't affect anyone else.
+ *
+ * <p>Every scope caches its own compiled templates. Rather than clearing the
+ * cache when an alias changes, each scope bumps a generation counter, and
+ * cached templates from an older generation are recompiled the next time
+ * they're used. The cache holds {@value #DEFAULT_CACHE_SIZE} templates
+ * unless told otherwise; use {@link #getStats} to see whether that suits.
+ */
+public final class ColorScope {
+    /** How many compiled templates a scope keeps by default. */
+    public static final int DEFAULT_CACHE_SIZE = 5000;
+
+    private final ColorScope parent;
+    private final Map<String, String> aliases = new ConcurrentHashMap<String, String>();
+    private final TranslationCache translations;
+    private volatile long localGeneration = 0;
+    private volatile CompiledAliases compiledAliases = new CompiledAliases(-1, null);
+
+    /**
+     * Create a new ColorScope.
+     * @param parent The scope to inherit aliases from, or null for a root scope.
+     */
+    public ColorScope(ColorScope parent) {
+        this(parent, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Create a new ColorScope with a given template cache size.
+     * @param parent The scope to inherit aliases from, or null for a root scope.
+     * @param cacheSize How many compiled templates to keep before evicting the least used.
+     */
+    public ColorScope(ColorScope parent, int cacheSize) {
+        Validate.isTrue(cacheSize > 0, "cacheSize must be positive");
+        this.parent = parent;
+        this.translations = new TranslationCache(cacheSize);
+    }
+
+    /**
+     * Get the scope this one inherits from.
+     * @return a ColorScope, or null if this is a root scope.
+     */
+    public ColorScope getParent() {
+        return parent;
+    }
+
+    /**
+     * Register an alias for a color in this scope.
+     * @param alias The alias string to use. Must include brackets.
+     * @param color A ChatColor.
+     */
+    public void registerAlias(String alias, ChatColor color) {
+        Validate.notNull(color);
+        putAlias(alias, color.toString());
+    }
+
+    /**
+     * Register an alias for a color, but only if it doesn't already resolve in this scope.
+     * @param alias The alias string to use. Must include brackets.
+     * @param color A ChatColor.
+     */
+    public synchronized void registerDefaultAlias(String alias, ChatColor color) {
+        if (resolve(alias) == null) {
+            registerAlias(alias, color);
+        }
+    }
+
+    synchronized void putAlias(String alias, String replacement) {
+        Validate.notEmpty(alias);
+        String previous = aliases.put(alias, replacement);
+        if (!replacement.equals(previous)) {
+            localGeneration++;
+        }
+    }
+
+    /**
+     * Find what an alias is replaced with, looking through parent scopes.
+     * @param alias The alias string.
+     * @return The replacement text, or null if the alias is unknown.
+     */
+    String resolve(String alias) {
+        String value = aliases.get(alias);
+        if (value == null && parent != null) {
+            return parent.resolve(alias);
+        }
+        return value;
+    }
+
+    /**
+     * The generation of this scope. Changes whenever this or any parent scope changes.
+     */
+    long generation() {
+        long generation = localGeneration;
+        if (parent != null) {
+            generation += parent.generation();
+        }
+        return generation;
+    }
+
+    /**
+     * Get the compiled form of a template, translating it if needed.
+     * @param template A template string in printf-format.
+     * @return A ChatTemplate which can be rendered repeatedly.
+     */
+    public ChatTemplate compile(String template) {
+        long generation = generation();
+        ChatTemplate compiled = translations.get(template, generation);
+        if (compiled == null) {
+            long start = System.nanoTime();
+            String translated = aliasTrie(generation).translate(template);
+            compiled = translations.put(template, ChatTemplate.parse(translated), generation);
+            translations.recordTranslation(System.nanoTime() - start);
+        }
+        return compiled;
+    }
+
+    /**
+     * Get statistics on this scope's translation cache.
+     *
+     * <p>The counters are cheap to maintain, so they're always on; taking
+     * a snapshot walks the cache, so don't do it on every tick.
+     *
+     * @param topCount How many of the most used templates to report.
+     * @return a snapshot of the cache statistics.
+     */
+    public TranslationStats getStats(int topCount) {
+        return translations.stats(topCount);
+    }
+
+    /**
+     * Change how many compiled templates this scope keeps.
+     *
+     * <p>If more than that are cached already, the least used are dropped
+     * right away. The hit, miss and eviction counts from {@link #getStats}
+     * show whether the cache is too small for the templates in use.
+     *
+     * @param cacheSize How many compiled templates to keep before evicting the least used.
+     */
+    public void setCacheSize(int cacheSize) {
+        Validate.isTrue(cacheSize > 0, "cacheSize must be positive");
+        translations.setMaxSize(cacheSize);
+    }
+
+    /**
+     * Get how many compiled templates this scope keeps.
+     * @return The cache size.
+     */
+    public int getCacheSize() {
+        return translations.getMaxSize();
+    }
+
+    /**
+     * Colorize this string with the aliases in this scope and interpolate any variables.
+     * @param template A template string in printf-format.
+     * @param args As many arguments as are expected by %-interpolations.
+     * @return A string which has been color-formatted
+     * @see ChatMagic#colorize
+     */
+    public String colorize(String template, Object ... args) {
+        return compile(template).render(args);
+    }
+
+    /**
+     * Send a colorized message using the aliases in this scope.
+     * @param sender A CommandSender or player.
+     * @param template A Colorizing template.
+     * @param args Variadic arguments as in String.format
+     */
+    public void send(CommandSender sender, String template, Object ... args) {
+        sender.sendMessage(colorize(template, args));
+    }
+
+    private AliasTrie aliasTrie(long generation) {
+        CompiledAliases compiled = compiledAliases;
+        if (compiled.generation != generation) {
+            Map<String, String> all = new HashMap<String, String>();
+            collectAliases(all);
+            compiled = new CompiledAliases(generation, AliasTrie.build(all));
+            compiledAliases = compiled;
+        }
+        return compiled.trie;
+    }
+
+    private void collectAliases(Map<String, String> target) {
+        if (parent != null) {
+            parent.collectAliases(target);
+        }
+        target.putAll(aliases);
+    }
+
+    private static final class CompiledAliases {
+        final long generation;
+        final AliasTrie trie;
+
+        CompiledAliases(long generation, AliasTrie trie) {
+            this.generation = generation;
+            this.trie = trie;
+        }
+    }
+}
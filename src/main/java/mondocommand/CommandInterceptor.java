@@ -0,0 +1,41 @@
+package mondocommand;
+
+/**
+ * Code which runs around subcommand handlers, for things like logging or metrics.
+ *
+ * <p>Interceptors can be added to a MondoCommand, to run for all its
+ * subcommands (including those of nested MondoCommands), or to a single
+ * SubCommand. They run in that order: outer MondoCommands first, then
+ * inner ones, then the subcommand's own, each in the order added.
+ *
+ * <p>Interceptors run after the permission, argument and rate limit checks,
+ * on the same thread as the handler.
+ *
+ * @see MondoCommand#addInterceptor
+ * @see SubCommand#addInterceptor
+ */
+public interface CommandInterceptor {
+    /**
+     * Called before the handler.
+     *
+     * <p>If this returns false or throws a {@link MondoFailure}, the handler
+     * and any later interceptors are skipped. A MondoFailure's message is
+     * shown to the sender as usual.
+     *
+     * @param call The call about to be handled.
+     * @return true to carry on with the call, false to stop it.
+     * @throws MondoFailure to stop the call with an error message.
+     */
+    public boolean before(CallInfo call) throws MondoFailure;
+
+    /**
+     * Called after the handler, or after the call was stopped by a later interceptor.
+     *
+     * <p>This is only called if {@link #before} returned true, and
+     * interceptors are called in the reverse order of before.
+     *
+     * @param call The call which was handled.
+     * @param failure The MondoFailure or unchecked exception the call ended with, or null.
+     */
+    public void after(CallInfo call, Throwable failure);
+}
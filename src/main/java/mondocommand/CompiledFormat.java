@@ -0,0 +1,46 @@
+package mondocommand;
+
+/**
+ * An immutable, pre-colorized snapshot of a {@link FormatConfig}.
+ *
+ * <p>MondoCommand grabs one of these at the start of each dispatch, so the
+ * error, usage and reply paths never concatenate or re-colorize format
+ * strings, and a FormatConfig being edited mid-dispatch can't produce a mix
+ * of old and new formats.
+ *
+ * @see FormatConfig#compile
+ */
+final class CompiledFormat {
+    final FormatConfig source;
+    final long stamp;
+    final ColorScope colorScope;
+    final String permissionWarning;
+    final String replyPrefix;
+    final String timeoutMessage;
+    final ChatTemplate usageHeader;
+    final ChatTemplate missingArgsUsage;
+    final ChatTemplate usagePageFooter;
+    final ChatTemplate error;
+    final ChatTemplate suggestion;
+    final ChatTemplate cooldown;
+    final int usagePageSize;
+    final boolean customUsageWriter;
+
+    CompiledFormat(FormatConfig source, long stamp) {
+        ColorScope scope = source.getColorScope();
+        this.source = source;
+        this.stamp = stamp;
+        this.colorScope = scope;
+        this.permissionWarning = scope.colorize(source.getPermissionWarning());
+        this.replyPrefix = scope.colorize(source.getReplyPrefix());
+        this.timeoutMessage = scope.colorize(source.getTimeoutMessage());
+        this.usageHeader = scope.compile(source.getUsageHeading() + "%s" + source.getUsageCommandSuffix());
+        this.missingArgsUsage = scope.compile(source.getUsageHeading() + "{MCMD}%s %s {USAGE}%s");
+        this.usagePageFooter = scope.compile(source.getUsagePageFooter());
+        this.error = scope.compile("{ERROR}%s");
+        this.suggestion = scope.compile(source.getSuggestionMessage());
+        this.cooldown = scope.compile(source.getCooldownMessage());
+        this.usagePageSize = source.getUsagePageSize();
+        this.customUsageWriter = source.hasCustomUsageWriter();
+    }
+}
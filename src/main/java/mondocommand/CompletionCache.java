@@ -0,0 +1,126 @@
+package mondocommand;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sorted subcommand names for tab completion, keyed by the set of subcommands a sender can see.
+ *
+ * <p>Like {@link UsageCache}, a CompletionCache is only valid for one state
+ * of its MondoCommand; when a subcommand is added or changed, MondoCommand
+ * starts a new one.
+ */
+final class CompletionCache {
+    private static final int MAX_ENTRIES = 256;
+
+    private final long commandVersion;
+    private final ConcurrentHashMap<BitSet, Completions> entries = new ConcurrentHashMap<BitSet, Completions>();
+
+    CompletionCache(long commandVersion) {
+        this.commandVersion = commandVersion;
+    }
+
+    /**
+     * Check if this cache was built for the given command state.
+     */
+    boolean isValid(long commandVersion) {
+        return this.commandVersion == commandVersion;
+    }
+
+    /**
+     * Get the completions for a set of subcommands, building them if needed.
+     * @param table The subcommand table the positions in allowed refer to.
+     * @param allowed Which subcommands (by position) the sender can use. Must not be modified afterwards.
+     * @return a Completions.
+     */
+    Completions get(SubCommandTable table, BitSet allowed) {
+        Completions completions = entries.get(allowed);
+        if (completions == null) {
+            if (entries.size() >= MAX_ENTRIES) {
+                entries.clear();
+            }
+            completions = new Completions(table, allowed);
+            entries.put(allowed, completions);
+        }
+        return completions;
+    }
+
+    /**
+     * The names and aliases of some subcommands, sorted for prefix searches.
+     */
+    static final class Completions {
+        private final String[] keys;
+        private final String[] names;
+        private final int[] positions;
+        private final boolean[] primary;
+
+        Completions(SubCommandTable table, BitSet allowed) {
+            int[] byName = table.byName();
+            int count = 0;
+            for (int nameIndex: byName) {
+                if (allowed.get(table.positionOf(nameIndex))) count++;
+            }
+            this.keys = new String[count];
+            this.names = new String[count];
+            this.positions = new int[count];
+            this.primary = new boolean[count];
+            int n = 0;
+            for (int nameIndex: byName) {
+                int position = table.positionOf(nameIndex);
+                if (allowed.get(position)) {
+                    keys[n] = table.key(nameIndex);
+                    names[n] = table.displayName(nameIndex);
+                    positions[n] = position;
+                    primary[n] = table.isPrimary(nameIndex);
+                    n++;
+                }
+            }
+        }
+
+        /**
+         * Find the names starting with a prefix, ignoring case.
+         *
+         * <p>Each subcommand is offered once: by its name if that matches,
+         * otherwise by the first matching alias.
+         *
+         * @param prefix What the user has typed so far.
+         * @return The matching names in alphabetical order.
+         */
+        List<String> complete(String prefix) {
+            String folded = SubCommandTable.fold(prefix);
+            int start = Arrays.binarySearch(keys, folded);
+            if (start < 0) {
+                start = -(start + 1);
+            }
+            int end = start;
+            boolean aliases = false;
+            while (end < keys.length && keys[end].startsWith(folded)) {
+                aliases |= !primary[end];
+                end++;
+            }
+            if (start == end) {
+                return Collections.emptyList();
+            } else if (!aliases) {
+                return Arrays.asList(Arrays.copyOfRange(names, start, end));
+            }
+            BitSet seen = new BitSet();
+            for (int i = start; i < end; i++) {
+                if (primary[i]) seen.set(positions[i]);
+            }
+            List<String> result = new ArrayList<String>(end - start);
+            for (int i = start; i < end; i++) {
+                if (primary[i]) {
+                    result.add(names[i]);
+                } else if (!seen.get(positions[i])) {
+                    seen.set(positions[i]);
+                    result.add(names[i]);
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package mondocommand;
 
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.apache.commons.lang.Validate;
 import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
@@ -14,9 +17,18 @@ public class FormatConfig {
     private String usageHeading = "{HEADER}Usage: ";
     private String usageCommandSuffix = " <command> [<args>]";
     private String replyPrefix = "";
+    private String usagePageFooter = "{HEADER}Page %d of %d. Type {MCMD}%s help <page>{HEADER} for more.";
+    private int usagePageSize = 0;
+    private String cooldownMessage = "{WARNING}Please wait %d seconds before using this command again.";
+    private String timeoutMessage = "Timed out waiting for a response, please try again.";
+    private String suggestionMessage = "{WARNING}Unknown command {MCMD}%s %s{WARNING}. Did you mean {MCMD}%s{WARNING}?";
+    private final ColorScope colorScope = new ColorScope(ChatMagic.getGlobalScope());
+    private final AtomicInteger version = new AtomicInteger();
+    private final boolean customUsageWriter;
+    private volatile CompiledFormat compiled = null;
 
     public FormatConfig() {
-
+        this.customUsageWriter = overridesUsageWriter(getClass());
     }
 
     public String getPermissionWarning() {
@@ -35,6 +47,34 @@ public class FormatConfig {
         return replyPrefix;
     }
 
+    public String getUsagePageFooter() {
+        return usagePageFooter;
+    }
+
+    public int getUsagePageSize() {
+        return usagePageSize;
+    }
+
+    public String getSuggestionMessage() {
+        return suggestionMessage;
+    }
+
+    public String getCooldownMessage() {
+        return cooldownMessage;
+    }
+
+    public String getTimeoutMessage() {
+        return timeoutMessage;
+    }
+
+    /**
+     * Get the color alias scope used for everything sent with this FormatConfig.
+     * @return a ColorScope which inherits from the global scope.
+     */
+    public ColorScope getColorScope() {
+        return colorScope;
+    }
+
 
     /**
      * Set the permission warning to be displayed when a user cannot access a command.
@@ -44,6 +84,7 @@ public class FormatConfig {
     public FormatConfig setPermissionWarning(String permissionWarning) {
         Validate.notNull(permissionWarning);
         this.permissionWarning = permissionWarning;
+        version.incrementAndGet();
         return this;
     }
 
@@ -55,6 +96,7 @@ public class FormatConfig {
     public FormatConfig setUsageCommandSuffix(String usageCommandSuffix) {
         Validate.notNull(usageCommandSuffix);
         this.usageCommandSuffix = usageCommandSuffix;
+        version.incrementAndGet();
         return this;
     }
 
@@ -66,6 +108,7 @@ public class FormatConfig {
     public FormatConfig setUsageHeading(String usageHeading) {
         Validate.notNull(usageHeading);
         this.usageHeading = usageHeading;
+        version.incrementAndGet();
         return this;
     }
 
@@ -77,9 +120,109 @@ public class FormatConfig {
     public FormatConfig setReplyPrefix(String replyPrefix) {
         Validate.notNull(replyPrefix);
         this.replyPrefix = replyPrefix;
+        version.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * Set how many subcommands are shown on each page of usage output.
+     *
+     * <p>When this is more than zero, the usage screen is split into pages,
+     * and users can view other pages with <tt>/command help &lt;page&gt;</tt>
+     * (unless you registered your own <tt>help</tt> subcommand).
+     *
+     * @param usagePageSize Number of subcommands per page, or 0 to show all at once.
+     * @return the same FormatConfig, for chaining
+     */
+    public FormatConfig setUsagePageSize(int usagePageSize) {
+        Validate.isTrue(usagePageSize >= 0, "usagePageSize cannot be negative");
+        this.usagePageSize = usagePageSize;
+        version.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * Set the footer shown below a page of usage output, if there's more than one page.
+     * @param usagePageFooter A string which accepts color codes, and receives
+     *        the page number, page count and command label as arguments.
+     * @return the same FormatConfig, for chaining
+     */
+    public FormatConfig setUsagePageFooter(String usagePageFooter) {
+        Validate.notNull(usagePageFooter);
+        this.usagePageFooter = usagePageFooter;
+        version.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * Set the message shown when a subcommand name is mistyped and there are similar ones.
+     *
+     * <p>If no subcommand the user may run is close to what they typed,
+     * they get the usage screen instead.
+     *
+     * @param suggestionMessage A string which accepts color codes, and receives
+     *        the command label, the name as typed, and the suggested names as arguments.
+     * @return the same FormatConfig, for chaining
+     */
+    public FormatConfig setSuggestionMessage(String suggestionMessage) {
+        Validate.notNull(suggestionMessage);
+        this.suggestionMessage = suggestionMessage;
+        version.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * Set the message shown when a sender uses a command faster than its rate limit allows.
+     * @param cooldownMessage A string which accepts color codes, and receives
+     *        the number of seconds left to wait as an argument.
+     * @return the same FormatConfig, for chaining
+     * @see SubCommand#setRateLimit
+     */
+    public FormatConfig setCooldownMessage(String cooldownMessage) {
+        Validate.notNull(cooldownMessage);
+        this.cooldownMessage = cooldownMessage;
+        version.incrementAndGet();
         return this;
     }
 
+    /**
+     * Set the message of the MondoFailure thrown when {@link CallInfo#fanOut} times out.
+     * @param timeoutMessage a String which accepts color codes.
+     * @return the same FormatConfig, for chaining
+     */
+    public FormatConfig setTimeoutMessage(String timeoutMessage) {
+        Validate.notNull(timeoutMessage);
+        this.timeoutMessage = timeoutMessage;
+        version.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * Set a color alias which only applies to messages sent with this FormatConfig.
+     *
+     * <p>This is useful for changing the color roles of one MondoCommand
+     * without affecting any other, for example
+     * <tt>setColorAlias("{HEADER}", ChatColor.AQUA)</tt>.
+     *
+     * @param alias The alias string to use. Must include brackets.
+     * @param color A ChatColor.
+     * @return the same FormatConfig, for chaining
+     */
+    public FormatConfig setColorAlias(String alias, ChatColor color) {
+        colorScope.registerAlias(alias, color);
+        return this;
+    }
+
+    /**
+     * Change how many compiled templates this FormatConfig's color scope keeps.
+     * @param cacheSize How many compiled templates to keep before evicting the least used.
+     * @return the same FormatConfig, for chaining
+     * @see ColorScope#setCacheSize
+     */
+    public FormatConfig setCacheSize(int cacheSize) {
+        colorScope.setCacheSize(cacheSize);
+        return this;
+    }
 
     /**
      * Register MondoCommand color aliases upon initialization of the MondoCommand.
@@ -113,11 +256,27 @@ public class FormatConfig {
      * @return A formatted single usage line.
      */
     public void writeUsageLine(CommandSender sender, String commandLabel, SubCommand sub) {
+        sender.sendMessage(formatUsageLine(commandLabel, sub));
+    }
+
+    /**
+     * Format one entry of the usage output.
+     *
+     * <p>Subclasses which only want to change how a usage line looks should
+     * override this rather than {@link #writeUsageLine}; MondoCommand caches
+     * usage screens built with this method, but can't cache the output of a
+     * custom writeUsageLine.
+     *
+     * @param commandLabel The current base command label. Will be prefixed with a / if a player command.
+     * @param sub The SubCommand we're generating a usage line for.
+     * @return A formatted single usage line.
+     */
+    public String formatUsageLine(String commandLabel, SubCommand sub) {
         String usage = "";
         if (sub.getUsage() != null) {
-            usage = ChatMagic.colorize(" {USAGE}%s", sub.getUsage());
+            usage = colorScope.colorize(" {USAGE}%s", sub.getUsage());
         }
-        ChatMagic.send(sender,
+        return colorScope.colorize(
             "{MCMD}%s {VERB}%s%s {DESCRIPTION}%s",
             commandLabel,
             sub.getName(),
@@ -125,4 +284,42 @@ public class FormatConfig {
             sub.getDescription()
         );
     }
+
+    /**
+     * Get an immutable, pre-colorized snapshot of this FormatConfig.
+     *
+     * <p>The snapshot is rebuilt only when a setting or color alias changes.
+     */
+    CompiledFormat compile() {
+        long stamp = stamp();
+        CompiledFormat current = compiled;
+        if (current == null || current.stamp != stamp) {
+            current = new CompiledFormat(this, stamp);
+            compiled = current;
+        }
+        return current;
+    }
+
+    /**
+     * A stamp which changes whenever anything affecting formatted output changes.
+     */
+    long stamp() {
+        return ((long) version.get() << 32) + colorScope.generation();
+    }
+
+    /**
+     * If true, writeUsageLine has been overridden and its output can't be cached.
+     */
+    boolean hasCustomUsageWriter() {
+        return customUsageWriter;
+    }
+
+    private static boolean overridesUsageWriter(Class<?> cls) {
+        try {
+            Method m = cls.getMethod("writeUsageLine", CommandSender.class, String.class, SubCommand.class);
+            return m.getDeclaringClass() != FormatConfig.class;
+        } catch (NoSuchMethodException e) {
+            return true;
+        }
+    }
 }
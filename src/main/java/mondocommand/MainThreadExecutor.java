@@ -0,0 +1,37 @@
+package mondocommand;
+
+import java.util.concurrent.Executor;
+
+import org.apache.commons.lang.Validate;
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * An Executor which runs tasks on the server's main thread, using the Bukkit scheduler.
+ *
+ * <p>Tasks submitted from the main thread run right away; tasks from any
+ * other thread run on the next server tick, in the order submitted.
+ *
+ * @see MondoCommand#setMainThreadExecutor
+ */
+public final class MainThreadExecutor implements Executor {
+    private final Plugin plugin;
+
+    /**
+     * Create a new MainThreadExecutor.
+     * @param plugin The plugin to schedule tasks for.
+     */
+    public MainThreadExecutor(Plugin plugin) {
+        Validate.notNull(plugin);
+        this.plugin = plugin;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (Bukkit.isPrimaryThread()) {
+            command.run();
+        } else {
+            Bukkit.getScheduler().runTask(plugin, command);
+        }
+    }
+}
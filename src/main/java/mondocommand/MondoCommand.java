@@ -2,9 +2,14 @@ package mondocommand;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
 import mondocommand.dynamic.SubCommandFinder;
 
@@ -12,19 +17,33 @@ import org.apache.commons.lang.Validate;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabCompleter;
 import org.bukkit.entity.Player;
+import org.bukkit.permissions.PermissionAttachmentInfo;
 
 /**
  * Handle commands dynamically with sub-command registration.
  * @author James Crasta
  *
  */
-public class MondoCommand implements CommandExecutor, SubHandler {
+public class MondoCommand implements CommandExecutor, TabCompleter, SubHandler {
     private static final FormatConfig BASE_FORMAT = new FormatConfig();
     private static final SubHandler fallbackHandler = new FallbackHandler();
+    private static final int MAX_SUGGESTIONS = 3;
 
     private final Map<String, SubCommand> subcommands = new LinkedHashMap<String, SubCommand>();
-    private final FormatConfig formatter;
+    private volatile FormatConfig formatter;
+    private final AtomicLong version = new AtomicLong();
+    private volatile UsageCache usageCache = new UsageCache(-1, null);
+    private volatile CompletionCache completionCache = new CompletionCache(-1);
+    private final boolean plainHandle = !overridesHandle(getClass());
+    private volatile SubCommandTable table = null;
+    private volatile boolean frozen = false;
+    private volatile Executor asyncExecutor = null;
+    private volatile Executor mainThreadExecutor = null;
+    private volatile PermissionCache permissionCache = null;
+    private volatile boolean resolveWildcards = false;
+    private CommandInterceptor[] interceptors = SubCommandTable.NO_INTERCEPTORS;
 
     /**
      * Create a new MondoCommand with the base formatting specification.
@@ -43,6 +62,141 @@ public class MondoCommand implements CommandExecutor, SubHandler {
         formatter.registerColorAliases();
     }
 
+    /**
+     * Get the FormatConfig currently used by this MondoCommand.
+     * @return a FormatConfig.
+     */
+    public FormatConfig getFormatConfig() {
+        return formatter;
+    }
+
+    /**
+     * Swap in a new FormatConfig, for example when reloading configuration.
+     *
+     * <p>The swap is atomic: each command invocation uses either the old or
+     * the new FormatConfig throughout, never a mix of both. Editing the
+     * settings of a FormatConfig in use is also allowed, but several setter
+     * calls in a row may be seen part-way through by a concurrent command.
+     *
+     * @param formatter Configuration on how to format responses.
+     */
+    public void setFormatConfig(FormatConfig formatter) {
+        Validate.notNull(formatter);
+        formatter.registerColorAliases();
+        this.formatter = formatter;
+    }
+
+    /**
+     * Set the Executor which runs the handlers of async subcommands.
+     *
+     * <p>Any Executor will do, for example a fixed thread pool, or on
+     * newer Java versions <tt>Executors.newVirtualThreadPerTaskExecutor()</tt>.
+     * There's no default: async subcommands can't be run until this
+     * MondoCommand or a parent has one, and dispatching one throws
+     * IllegalStateException. The plugin owns the executor, so it can bound
+     * it to suit its work and shut it down in <tt>onDisable</tt>. Nested
+     * MondoCommands without their own executor use their parent's.
+     *
+     * @param asyncExecutor An Executor, or null for none.
+     * @see SubCommand#setAsync
+     */
+    public void setAsyncExecutor(Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    /**
+     * Get the Executor set with {@link #setAsyncExecutor}.
+     * @return an Executor, or null if none is set.
+     */
+    public Executor getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    /**
+     * Set the Executor used to get back to the server thread from async subcommands.
+     *
+     * <p>Replies from async handlers, and tasks passed to
+     * {@link CallInfo#runOnMainThread}, are run with this. In a plugin,
+     * use a {@link MainThreadExecutor}. Async subcommands can't be run
+     * without one: dispatching one throws IllegalStateException if neither
+     * this MondoCommand nor a parent has a main thread executor. Nested
+     * MondoCommands without their own executor use their parent's.
+     *
+     * @param mainThreadExecutor An Executor, or null for none.
+     */
+    public void setMainThreadExecutor(Executor mainThreadExecutor) {
+        this.mainThreadExecutor = mainThreadExecutor;
+    }
+
+    /**
+     * Get the Executor set with {@link #setMainThreadExecutor}.
+     * @return an Executor, or null if none is set.
+     */
+    public Executor getMainThreadExecutor() {
+        return mainThreadExecutor;
+    }
+
+    /**
+     * Cache permission checks for this MondoCommand's subcommands.
+     *
+     * <p>When set, permission checks for dispatch, usage output, suggestions
+     * and tab completion go through the cache instead of calling
+     * <tt>hasPermission</tt> on the sender every time. Nested MondoCommands
+     * need their own call to this, but can share the same cache.
+     *
+     * @param permissionCache A PermissionCache, or null to check permissions directly.
+     * @throws IllegalArgumentException if null while wildcards are resolved; see {@link #setResolveWildcards}.
+     */
+    public void setPermissionCache(PermissionCache permissionCache) {
+        Validate.isTrue(permissionCache != null || !resolveWildcards, "Resolving wildcards needs a PermissionCache");
+        this.permissionCache = permissionCache;
+        invalidate();
+    }
+
+    /**
+     * Get the PermissionCache set with {@link #setPermissionCache}.
+     * @return a PermissionCache, or null if permissions are checked directly.
+     */
+    public PermissionCache getPermissionCache() {
+        return permissionCache;
+    }
+
+    /**
+     * Resolve wildcard permissions like <tt>housebuilder.*</tt> ourselves.
+     *
+     * <p>Without a permissions plugin which understands wildcards, Bukkit
+     * only grants a node that's set directly or as a child of a registered
+     * permission. When this is on, the subcommands' permission nodes are
+     * compiled into a trie and matched against the sender's
+     * <tt>getEffectivePermissions()</tt> in one pass, deciding every
+     * subcommand at once. The most specific setting wins: the node itself,
+     * then the closest wildcard above it. Subcommands whose nodes aren't
+     * mentioned at all, and senders with no effective permissions to read,
+     * fall back to <tt>hasPermission</tt> so permission defaults still
+     * apply. Nested MondoCommands need their own call to this.
+     *
+     * <p>Reading the effective permissions copies them, so resolving is
+     * only worth it if the result is reused: this needs a
+     * {@link PermissionCache}, which keeps the resolved snapshot for each
+     * sender. Set the cache first.
+     *
+     * @param resolveWildcards true to resolve wildcards, false to only use <tt>hasPermission</tt>.
+     * @throws IllegalArgumentException if turning this on without a PermissionCache.
+     */
+    public void setResolveWildcards(boolean resolveWildcards) {
+        Validate.isTrue(!resolveWildcards || permissionCache != null, "Resolving wildcards needs a PermissionCache");
+        this.resolveWildcards = resolveWildcards;
+        invalidate();
+    }
+
+    /**
+     * Check if wildcard permissions are resolved; see {@link #setResolveWildcards}.
+     * @return true if they are.
+     */
+    public boolean getResolveWildcards() {
+        return resolveWildcards;
+    }
+
     /** Implement onCommand so this can be registered as a CommandExecutor */
     @Override
     public boolean onCommand(CommandSender sender, Command cmd, String commandLabel, String[] args) {
@@ -51,68 +205,433 @@ public class MondoCommand implements CommandExecutor, SubHandler {
             player = (Player) sender;
             commandLabel = "/" + commandLabel;
         }
-        List<String> callArgs = new ArrayList<String>(Arrays.asList(args));
-        handleRawCommand(sender, player, commandLabel, callArgs);
+        handleRawCommand(sender, player, commandLabel, args, 0);
         return false;
     }
 
+    /**
+     * Implement onTabComplete so this can be registered as a TabCompleter.
+     *
+     * <p>Completes subcommand names, descending through nested MondoCommands
+     * for the arguments already typed. Only subcommands the sender may run
+     * are offered. The sorted names are cached for each set of available
+     * subcommands, so a keypress costs a permission check per subcommand
+     * and a binary search.
+     *
+     * <p>Arguments after a subcommand with an ordinary handler get null, so
+     * Bukkit falls back to its default of completing player names.
+     */
+    @Override
+    public List<String> onTabComplete(CommandSender sender, Command cmd, String alias, String[] args) {
+        Player player = (sender instanceof Player) ? (Player) sender : null;
+        MondoCommand level = this;
+        for (int i = 0; i < args.length - 1; i++) {
+            PermissionSnapshot permissions = level.permissions(sender, player);
+            int position = permissions.table.find(args[i]);
+            if (position < 0 || !permissions.available.get(position)) {
+                return Collections.emptyList();
+            }
+            SubHandler handler = permissions.table.at(position).getHandler();
+            if (!(handler instanceof MondoCommand)) {
+                return null;
+            }
+            level = (MondoCommand) handler;
+        }
+        String prefix = (args.length == 0) ? "" : args[args.length - 1];
+        return level.completions(sender, player).complete(prefix);
+    }
+
+    private CompletionCache.Completions completions(CommandSender sender, Player player) {
+        long commandVersion = version.get();
+        CompletionCache cache = completionCache;
+        if (!cache.isValid(commandVersion)) {
+            cache = new CompletionCache(commandVersion);
+            completionCache = cache;
+        }
+        PermissionSnapshot permissions = permissions(sender, player);
+        return cache.get(permissions.table, permissions.available);
+    }
 
     /** Implement the SubHandler interface so we can do sub-sub commands and such. */
     @Override
     public void handle(CallInfo call) throws MondoFailure {
         String commandLabel = call.getBaseCommand() + " " + call.getSubCommand().getName();
-        handleRawCommand(call.getSender(), call.getPlayer(), commandLabel, call.getArgs());
+        handleRawCommand(call.getSender(), call.getPlayer(), commandLabel, call.rawArgs(), call.rawArgOffset());
     }
 
     /**
      * Handle a command, dispatching to the appropriate listeners.
+     *
+     * <p>If a subcommand's handler is itself a MondoCommand, we descend into
+     * it right here instead of going through {@link #handle}, so a path like
+     * <tt>/a b c d</tt> is resolved in one walk over the nested lookup tables
+     * and only the final handler gets a CallInfo. Each level still checks
+     * permissions and minimum arguments, and uses its own FormatConfig.
+     *
+     * <p>The argument array is never copied; the CallInfo is a view of it
+     * starting after the last subcommand name.
+     *
      * @param sender A CommandSender who is the person or console who sent this command.
      * @param player A Player object (can be null)
      * @param commandLabel The current alias this command is running as
      * @param args The arguments that were passed to this command.
+     * @param offset The position in args of the first argument for this command.
      */
-    private void handleRawCommand(CommandSender sender, Player player, String commandLabel, List<String> args) {
-        if (args.size() == 0) {
-            showUsage(sender, player, commandLabel);
+    private void handleRawCommand(CommandSender sender, Player player, String commandLabel, String[] args, int offset) {
+        MondoCommand level = this;
+        SubCommand[] path = null;
+        int depth = 0;
+        CommandInterceptor[] outer = SubCommandTable.NO_INTERCEPTORS;
+        boolean async = false;
+        Executor asyncExec = asyncExecutor;
+        Executor mainExec = mainThreadExecutor;
+        while (true) {
+            CompiledFormat fmt = level.formatter.compile();
+            int remaining = args.length - offset;
+            if (remaining == 0) {
+                level.showUsage(fmt, sender, player, buildLabel(commandLabel, path, depth), 1);
+                return;
+            }
+            SubCommandTable table = level.currentTable();
+            int position = table.find(args[offset]);
+            SubCommand sub = (position < 0) ? null : table.at(position);
+            if (sub == null) {
+                String label = buildLabel(commandLabel, path, depth);
+                String typed = args[offset];
+                if (typed.equalsIgnoreCase("help")) {
+                    int page = (remaining > 1) ? parsePage(args[offset + 1]) : 1;
+                    level.showUsage(fmt, sender, player, label, page);
+                } else if (!level.suggest(fmt, sender, player, label, typed)) {
+                    level.showUsage(fmt, sender, player, label, 1);
+                }
+                return;
+            } else if (!level.isPermitted(table, position, sender, player)) {
+                sender.sendMessage(fmt.permissionWarning);
+                return;
+            } else if ((remaining - 1) < sub.getMinArgs()) {
+                String label = buildLabel(commandLabel, path, depth);
+                sender.sendMessage(fmt.missingArgsUsage.render(label, sub.getName(), sub.getUsage()));
+                return;
+            }
+            RateLimiter limiter = sub.getRateLimiter();
+            if (limiter != null) {
+                long wait = limiter.tryAcquire(sender);
+                if (wait > 0) {
+                    sender.sendMessage(fmt.cooldown.render((wait + 999999999L) / 1000000000L));
+                    return;
+                }
+            }
+            SubHandler handler = sub.getHandler();
+            if (handler instanceof MondoCommand && ((MondoCommand) handler).plainHandle) {
+                if (path == null) {
+                    path = new SubCommand[4];
+                } else if (depth == path.length) {
+                    path = Arrays.copyOf(path, depth * 2);
+                }
+                path[depth++] = sub;
+                outer = SubCommandTable.concat(outer, table.interceptors(position));
+                async |= sub.isAsync();
+                level = (MondoCommand) handler;
+                if (level.asyncExecutor != null) {
+                    asyncExec = level.asyncExecutor;
+                }
+                if (level.mainThreadExecutor != null) {
+                    mainExec = level.mainThreadExecutor;
+                }
+                offset++;
+                continue;
+            }
+            String label = buildLabel(commandLabel, path, depth);
+            CallInfo call = new CallInfo(sender, player, label, sub, args, offset + 1, fmt);
+            HandlerTask task = new HandlerTask(handler, SubCommandTable.concat(outer, table.interceptors(position)), call, fmt);
+            if (async || sub.isAsync()) {
+                if (asyncExec == null || mainExec == null) {
+                    throw new IllegalStateException(
+                        "Async subcommand '" + sub.getName() + "' needs an async executor and a main thread executor;"
+                        + " see MondoCommand.setAsyncExecutor and setMainThreadExecutor"
+                    );
+                }
+                call.batchReplies();
+                call.setMainThread(mainExec);
+                asyncExec.execute(task);
+            } else {
+                task.run();
+            }
             return;
         }
-        String subcommandName = args.get(0).toLowerCase();
-        SubCommand sub = subcommands.get(subcommandName);
-        if (sub == null) {
-            showUsage(sender, player, commandLabel);
-            return;
-        } else if (!sub.checkPermission(sender)) {
-            ChatMagic.send(sender, formatter.getPermissionWarning());
-            return;
-        } else if ((args.size() - 1) < sub.getMinArgs()) {
-            String usageFormat = formatter.getUsageHeading() + "{MCMD}%s %s {USAGE}%s";
-            ChatMagic.send(sender, usageFormat, commandLabel, sub.getName(), sub.getUsage());
-            return;
+    }
+
+    /**
+     * Runs a handler and its interceptors, reporting any MondoFailure to the sender.
+     */
+    private static final class HandlerTask implements Runnable {
+        private final SubHandler handler;
+        private final CommandInterceptor[] interceptors;
+        private final CallInfo call;
+        private final CompiledFormat fmt;
+
+        HandlerTask(SubHandler handler, CommandInterceptor[] interceptors, CallInfo call, CompiledFormat fmt) {
+            this.handler = handler;
+            this.interceptors = interceptors;
+            this.call = call;
+            this.fmt = fmt;
+        }
+
+        @Override
+        public void run() {
+            int entered = 0;
+            Throwable failure = null;
+            try {
+                while (entered < interceptors.length) {
+                    if (!interceptors[entered].before(call)) {
+                        return;
+                    }
+                    entered++;
+                }
+                handler.handle(call);
+            } catch (MondoFailure e) {
+                failure = e;
+                call.reply(fmt.error, e.getMessage());
+            } catch (RuntimeException e) {
+                failure = e;
+                throw e;
+            } catch (Error e) {
+                failure = e;
+                throw e;
+            } finally {
+                try {
+                    while (entered > 0) {
+                        interceptors[--entered].after(call, failure);
+                    }
+                } finally {
+                    call.finishReplies();
+                }
+            }
+        }
+    }
+
+    /**
+     * Build the label for a nested command, like "/base sub1 sub2".
+     */
+    private static String buildLabel(String commandLabel, SubCommand[] path, int depth) {
+        if (depth == 0) {
+            return commandLabel;
         }
-        List<String> callArgs = new ArrayList<String>(args.subList(1, args.size()));
-        CallInfo call = new CallInfo(sender, player, commandLabel, sub, callArgs, formatter);
+        StringBuilder sb = new StringBuilder(commandLabel);
+        for (int i = 0; i < depth; i++) {
+            sb.append(' ').append(path[i].getName());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Check if a subclass changes what handle() does; if so we can't skip past it when dispatching.
+     */
+    private static boolean overridesHandle(Class<?> cls) {
         try {
-            sub.getHandler().handle(call);
-        } catch (MondoFailure e) {
-            call.reply("{ERROR}%s", e.getMessage());
+            return cls.getMethod("handle", CallInfo.class).getDeclaringClass() != MondoCommand.class;
+        } catch (NoSuchMethodException e) {
+            return true;
         }
-        return;
     }
 
     /**
      * Show the usage for this command.
+     *
+     * <p>Usage screens are cached by command label and the set of
+     * subcommands available to the sender, so a repeat request only costs a
+     * permission check per subcommand. If the FormatConfig has a page size,
+     * only the lines on the requested page are rendered.
+     *
+     * @param fmt The compiled FormatConfig for this invocation.
      * @param sender A CommandSender who is requesting the usage.
      * @param player A Player object (can be null)
      * @param commandLabel The current command label.
-     * @param slash An empty string if there should be a slash prefix, a slash otherwise.
+     * @param page The page to show, starting at 1. Ignored if usage isn't paginated.
+     */
+    private void showUsage(CompiledFormat fmt, CommandSender sender, Player player, String commandLabel, int page) {
+        if (fmt.customUsageWriter) {
+            sender.sendMessage(fmt.usageHeader.render(commandLabel));
+            List<SubCommand> available = availableCommands(permissions(sender, player));
+            int[] range = pageRange(fmt, available.size(), page);
+            for (SubCommand sub: available.subList(range[0], range[1])) {
+                fmt.source.writeUsageLine(sender, commandLabel, sub);
+            }
+            String footer = pageFooter(fmt, available.size(), page, commandLabel);
+            if (footer != null) {
+                sender.sendMessage(footer);
+            }
+            return;
+        }
+        UsageCache cache = currentUsageCache(fmt);
+        PermissionSnapshot permissions = permissions(sender, player);
+        BitSet allowed = permissions.available;
+        UsageCache.Screen screen = cache.get(commandLabel, allowed);
+        if (screen == null) {
+            screen = buildUsageScreen(fmt, commandLabel, permissions.table, allowed);
+            cache.put(commandLabel, allowed, screen);
+        }
+        int[] range = pageRange(fmt, screen.size(), page);
+        String footer = pageFooter(fmt, screen.size(), page, commandLabel);
+        sender.sendMessage(screen.render(fmt.source, range[0], range[1], footer));
+    }
+
+    private UsageCache.Screen buildUsageScreen(CompiledFormat fmt, String commandLabel, SubCommandTable table, BitSet allowed) {
+        SubCommand[] subs = new SubCommand[allowed.cardinality()];
+        int n = 0;
+        for (int i = allowed.nextSetBit(0); i >= 0; i = allowed.nextSetBit(i + 1)) {
+            subs[n++] = table.at(i);
+        }
+        return new UsageCache.Screen(commandLabel, fmt.usageHeader.render(commandLabel), subs);
+    }
+
+    /**
+     * Suggest the closest subcommands the sender may run, if any are close to what they typed.
+     *
+     * <p>Names up to two edits away are considered, or one edit for names
+     * of three letters or less. Only those at the smallest distance found
+     * are suggested.
+     *
+     * @return true if a suggestion was sent.
      */
-    private void showUsage(CommandSender sender, Player player, String commandLabel) {
-        String headerFormat = formatter.getUsageHeading() + "%s" + formatter.getUsageCommandSuffix();
-        ChatMagic.send(sender, headerFormat, commandLabel);
+    private boolean suggest(CompiledFormat fmt, CommandSender sender, Player player, String commandLabel, String typed) {
+        PermissionSnapshot permissions = permissions(sender, player);
+        SubCommandTable table = permissions.table;
+        BitSet available = permissions.available;
+        int[] distances = table.suggest(typed, (typed.length() <= 3) ? 1 : 2);
+        if (distances == null) {
+            return false;
+        }
+        int best = Integer.MAX_VALUE;
+        for (int i = 0; i < distances.length; i++) {
+            if (distances[i] >= 0 && distances[i] < best && available.get(i)) {
+                best = distances[i];
+            }
+        }
+        if (best == Integer.MAX_VALUE) {
+            return false;
+        }
+        StringBuilder names = new StringBuilder();
+        int count = 0;
+        for (int i = 0; i < distances.length && count < MAX_SUGGESTIONS; i++) {
+            if (distances[i] == best && available.get(i)) {
+                if (count++ > 0) {
+                    names.append(", ");
+                }
+                names.append(table.at(i).getName());
+            }
+        }
+        sender.sendMessage(fmt.suggestion.render(commandLabel, typed, names.toString()));
+        return true;
+    }
+
+    /**
+     * Work out which usage lines are on a page.
+     * @return the start (inclusive) and end (exclusive) line.
+     */
+    private static int[] pageRange(CompiledFormat fmt, int lineCount, int page) {
+        if (fmt.usagePageSize == 0) {
+            return new int[] {0, lineCount};
+        }
+        int start = (clampPage(fmt, lineCount, page) - 1) * fmt.usagePageSize;
+        return new int[] {start, Math.min(start + fmt.usagePageSize, lineCount)};
+    }
+
+    private static String pageFooter(CompiledFormat fmt, int lineCount, int page, String commandLabel) {
+        int pageSize = fmt.usagePageSize;
+        if (pageSize == 0 || lineCount <= pageSize) {
+            return null;
+        }
+        int pages = (lineCount + pageSize - 1) / pageSize;
+        return fmt.usagePageFooter.render(clampPage(fmt, lineCount, page), pages, commandLabel);
+    }
+
+    private static int clampPage(CompiledFormat fmt, int lineCount, int page) {
+        int pageSize = fmt.usagePageSize;
+        int pages = Math.max(1, (lineCount + pageSize - 1) / pageSize);
+        return Math.max(1, Math.min(page, pages));
+    }
+
+    private static int parsePage(String text) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    private UsageCache currentUsageCache(CompiledFormat fmt) {
+        long commandVersion = version.get();
+        UsageCache cache = usageCache;
+        if (!cache.isValid(commandVersion, fmt)) {
+            cache = new UsageCache(commandVersion, fmt);
+            usageCache = cache;
+        }
+        return cache;
+    }
+
+    /**
+     * Called when a subcommand changes, to drop anything cached about it.
+     */
+    void invalidate() {
+        version.incrementAndGet();
+    }
 
-        for (SubCommand sub: availableCommands(sender, player)) {
-            formatter.writeUsageLine(sender, commandLabel, sub);
+    /**
+     * Get the lookup table for our subcommands, building it if anything was added.
+     */
+    private SubCommandTable currentTable() {
+        SubCommandTable current = table;
+        if (current == null) {
+            synchronized (subcommands) {
+                current = table;
+                if (current == null) {
+                    current = SubCommandTable.build(subcommands, interceptors);
+                    table = current;
+                }
+            }
         }
+        return current;
+    }
+
+    /**
+     * Freeze this MondoCommand, making it and its subcommands read-only.
+     *
+     * <p>Call this when you're done registering subcommands, typically at
+     * the end of <tt>onEnable</tt>. The subcommand lookup table is compiled
+     * once, after which dispatch is safe from any thread without locking,
+     * and any attempt to add or change a subcommand throws an
+     * {@link IllegalStateException}. Nested MondoCommands used as handlers
+     * are frozen too.
+     *
+     * @return the same MondoCommand, for chaining.
+     */
+    public MondoCommand freeze() {
+        synchronized (subcommands) {
+            if (frozen) {
+                return this;
+            }
+            frozen = true;
+            table = SubCommandTable.build(subcommands, interceptors);
+            for (SubCommand sub: subcommands.values()) {
+                sub.freeze();
+            }
+        }
+        for (SubCommand sub: subcommands.values()) {
+            if (sub.getHandler() instanceof MondoCommand) {
+                ((MondoCommand) sub.getHandler()).freeze();
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Check if this MondoCommand has been frozen.
+     * @return true if subcommands can no longer be added or changed.
+     * @see #freeze
+     */
+    public boolean isFrozen() {
+        return frozen;
     }
 
     /**
@@ -123,10 +642,78 @@ public class MondoCommand implements CommandExecutor, SubHandler {
      */
     public SubCommand addSub(String name, String permission) {
         SubCommand cmd = new SubCommand(name, permission).setHandler(fallbackHandler);
-        subcommands.put(name.toLowerCase(), cmd);
+        cmd.setOwner(this);
+        synchronized (subcommands) {
+            if (frozen) {
+                throw new IllegalStateException("Cannot add subcommand '" + name + "' to a frozen MondoCommand");
+            }
+            subcommands.put(SubCommandTable.fold(name), cmd);
+            table = null;
+        }
+        invalidate();
         return cmd;
     }
 
+    /**
+     * Add an interceptor which runs around the handlers of all our subcommands.
+     *
+     * <p>This includes subcommands of nested MondoCommands; interceptors of
+     * outer MondoCommands run first. Interceptors are compiled into each
+     * subcommand's entry in the lookup table, so they cost nothing at
+     * dispatch beyond the calls themselves.
+     *
+     * @param interceptor A CommandInterceptor.
+     * @return the same MondoCommand, for chaining.
+     */
+    public MondoCommand addInterceptor(CommandInterceptor interceptor) {
+        Validate.notNull(interceptor);
+        synchronized (subcommands) {
+            if (frozen) {
+                throw new IllegalStateException("Cannot add an interceptor to a frozen MondoCommand");
+            }
+            interceptors = SubCommandTable.concat(interceptors, new CommandInterceptor[] {interceptor});
+            table = null;
+        }
+        return this;
+    }
+
+    /**
+     * Called when something compiled into the lookup table changes.
+     */
+    void tableChanged() {
+        synchronized (subcommands) {
+            table = null;
+        }
+        invalidate();
+    }
+
+    /**
+     * Register an alias for one of our subcommands; called by {@link SubCommand#addAlias}.
+     */
+    void addAlias(SubCommand sub, String alias) {
+        String folded = SubCommandTable.fold(alias);
+        synchronized (subcommands) {
+            if (frozen) {
+                throw new IllegalStateException("Cannot add alias '" + alias + "' to a frozen MondoCommand");
+            }
+            for (SubCommand other: subcommands.values()) {
+                if (other == sub) continue;
+                boolean clash = SubCommandTable.fold(other.getName()).equals(folded);
+                for (String otherAlias: other.getAliases()) {
+                    clash |= SubCommandTable.fold(otherAlias).equals(folded);
+                }
+                if (clash) {
+                    throw new IllegalArgumentException(
+                        "Alias '" + alias + "' is already used by subcommand '" + other.getName() + "'"
+                    );
+                }
+            }
+            sub.appendAlias(alias);
+            table = null;
+        }
+        invalidate();
+    }
+
     /**
      * Add a sub-command to this MondoCommand.
      * @param name the name of this sub-command.
@@ -136,23 +723,109 @@ public class MondoCommand implements CommandExecutor, SubHandler {
         return addSub(name, null);
     }
 
-    private List<SubCommand> availableCommands(CommandSender sender, Player player) {
-        ArrayList<SubCommand> items = new ArrayList<SubCommand>();
-        boolean has_player = (player != null);
-        for (SubCommand sub: subcommands.values()) {
-            if ((has_player || sub.isConsoleAllowed()) && sub.checkPermission(sender)) {
-                items.add(sub);
-            }
+    private static List<SubCommand> availableCommands(PermissionSnapshot permissions) {
+        BitSet allowed = permissions.available;
+        ArrayList<SubCommand> items = new ArrayList<SubCommand>(allowed.cardinality());
+        for (int i = allowed.nextSetBit(0); i >= 0; i = allowed.nextSetBit(i + 1)) {
+            items.add(permissions.table.at(i));
         }
         return items;
     }
 
+    /**
+     * Get which subcommands a sender may use.
+     *
+     * <p>With a PermissionCache, the snapshot is kept in the cache and
+     * reused until the sender's cached permissions are invalidated or any
+     * subcommand changes; without one, it's computed fresh.
+     */
+    private PermissionSnapshot permissions(CommandSender sender, Player player) {
+        long commandVersion = version.get();
+        SubCommandTable table = currentTable();
+        PermissionCache cache = permissionCache;
+        if (cache == null) {
+            return computePermissions(table, commandVersion, sender, player);
+        }
+        long now = System.nanoTime();
+        PermissionSnapshot snapshot = cache.getSnapshot(sender, this, now);
+        if (snapshot == null || !snapshot.isValid(table, commandVersion)) {
+            snapshot = computePermissions(table, commandVersion, sender, player);
+            cache.putSnapshot(sender, this, snapshot, now);
+        }
+        return snapshot;
+    }
+
+    private PermissionSnapshot computePermissions(SubCommandTable table, long commandVersion, CommandSender sender, Player player) {
+        BitSet permitted = new BitSet(table.size());
+        Set<PermissionAttachmentInfo> effective = resolveWildcards ? sender.getEffectivePermissions() : null;
+        if (effective != null) {
+            BitSet undecided = new BitSet(table.size());
+            table.permissionTrie().resolve(effective, permitted, undecided);
+            for (int i = undecided.nextSetBit(0); i >= 0; i = undecided.nextSetBit(i + 1)) {
+                if (hasPermission(table.at(i), sender)) {
+                    permitted.set(i);
+                }
+            }
+        } else {
+            for (int i = 0; i < table.size(); i++) {
+                if (hasPermission(table.at(i), sender)) {
+                    permitted.set(i);
+                }
+            }
+        }
+        BitSet available = permitted;
+        if (player == null) {
+            available = new BitSet(table.size());
+            for (int i = permitted.nextSetBit(0); i >= 0; i = permitted.nextSetBit(i + 1)) {
+                if (table.at(i).isConsoleAllowed()) {
+                    available.set(i);
+                }
+            }
+        }
+        return new PermissionSnapshot(table, commandVersion, permitted, available);
+    }
+
+    /**
+     * Check if the sender has permission for the subcommand at a position in a table.
+     *
+     * <p>With a PermissionCache (which wildcard resolution needs) this is a
+     * bit test on the sender's cached snapshot; otherwise it's a plain
+     * permission check, rather than working out the whole snapshot to use
+     * one bit of it.
+     */
+    private boolean isPermitted(SubCommandTable table, int position, CommandSender sender, Player player) {
+        if (permissionCache != null) {
+            PermissionSnapshot snapshot = permissions(sender, player);
+            if (snapshot.table == table) {
+                return snapshot.permitted.get(position);
+            }
+        }
+        return hasPermission(table.at(position), sender);
+    }
+
+    /**
+     * Check a subcommand's permission, through the permission cache if there is one.
+     */
+    private boolean hasPermission(SubCommand sub, CommandSender sender) {
+        PermissionCache cache = permissionCache;
+        String permission = sub.getPermission();
+        if (cache == null || permission == null) {
+            return sub.checkPermission(sender);
+        }
+        return cache.hasPermission(sender, permission);
+    }
+
     public void autoRegisterFrom(Object handler) {
         new SubCommandFinder(this).registerMethods(handler);
     }
 
     public List<SubCommand> listCommands() {
-        return new ArrayList<SubCommand>(subcommands.values());
+        SubCommandTable table = currentTable();
+        List<SubCommand> commands = new ArrayList<SubCommand>(table.size());
+        for (int i = 0; i < table.size(); i++) {
+            commands.add(table.at(i));
+        }
+        return commands;
     }
 }
 
@@ -0,0 +1,199 @@
+package mondocommand;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.Validate;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+/**
+ * Remembers the results of permission checks, for servers where
+ * <tt>hasPermission</tt> is slow.
+ *
+ * <p>Decisions are cached per sender and permission node. They're dropped
+ * when they get older than the time to live, when {@link #invalidate()} is
+ * called for everyone, or when {@link #invalidate(CommandSender)} is
+ * called for one sender. Call the latter when a player's permissions
+ * change, and when they log out, so the cache doesn't hold on to them.
+ *
+ * <p>Each MondoCommand using the cache also keeps a snapshot of which of
+ * its subcommands each sender may use alongside that sender's decisions,
+ * so they're invalidated together.
+ *
+ * <p>A PermissionCache is opt-in: see {@link MondoCommand#setPermissionCache}.
+ * One cache can be shared by several MondoCommands.
+ */
+public final class PermissionCache {
+    private final long ttlNanos;
+    private final AtomicLong generation = new AtomicLong();
+    private final ConcurrentHashMap<Object, SenderEntry> senders = new ConcurrentHashMap<Object, SenderEntry>();
+    private final long sweepInterval;
+    private final AtomicLong nextSweep;
+
+    /**
+     * Create a PermissionCache whose decisions expire.
+     *
+     * <p>Snapshots of which subcommands a sender may use are kept for the
+     * same time, and built from cached decisions, so a permission change
+     * may take up to twice ttl to be noticed without an invalidate call.
+     *
+     * @param ttl How long to remember each decision, or 0 to keep them until invalidated.
+     * @param unit The unit of ttl.
+     */
+    public PermissionCache(long ttl, TimeUnit unit) {
+        Validate.isTrue(ttl >= 0, "ttl cannot be negative");
+        Validate.notNull(unit);
+        this.ttlNanos = unit.toNanos(ttl);
+        this.sweepInterval = Math.max(ttlNanos, TimeUnit.MINUTES.toNanos(1));
+        this.nextSweep = new AtomicLong(System.nanoTime() + sweepInterval);
+    }
+
+    /**
+     * Create a PermissionCache which keeps decisions until invalidated.
+     */
+    public PermissionCache() {
+        this(0, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Check a permission, using a cached decision if there is one.
+     * @param sender The CommandSender to check.
+     * @param node The permission node.
+     * @return the result of <tt>sender.hasPermission(node)</tt>, possibly from the cache.
+     */
+    public boolean hasPermission(CommandSender sender, String node) {
+        return hasPermission(sender, node, System.nanoTime());
+    }
+
+    boolean hasPermission(CommandSender sender, String node, long now) {
+        SenderEntry entry = entry(sender, now);
+        Decision decision = entry.decisions.get(node);
+        if (decision == null || (ttlNanos > 0 && now - decision.expires >= 0)) {
+            decision = new Decision(sender.hasPermission(node), now + ttlNanos);
+            entry.decisions.put(node, decision);
+        }
+        return decision.allowed;
+    }
+
+    /**
+     * Get a sender's permission snapshot for a MondoCommand.
+     * @param owner The MondoCommand the snapshot is for.
+     * @return The snapshot, or null if there's none or it has expired.
+     */
+    PermissionSnapshot getSnapshot(CommandSender sender, MondoCommand owner, long now) {
+        TimedSnapshot timed = entry(sender, now).snapshots.get(owner);
+        if (timed == null || (ttlNanos > 0 && now - timed.expires >= 0)) {
+            return null;
+        }
+        return timed.snapshot;
+    }
+
+    /**
+     * Store a sender's permission snapshot for a MondoCommand.
+     */
+    void putSnapshot(CommandSender sender, MondoCommand owner, PermissionSnapshot snapshot, long now) {
+        entry(sender, now).snapshots.put(owner, new TimedSnapshot(snapshot, now + ttlNanos));
+    }
+
+    private SenderEntry entry(CommandSender sender, long now) {
+        if (now - nextSweep.get() >= 0) {
+            sweep(now);
+        }
+        Object key = senderKey(sender);
+        long currentGeneration = generation.get();
+        SenderEntry entry = senders.get(key);
+        if (entry == null || entry.generation != currentGeneration) {
+            entry = new SenderEntry(currentGeneration);
+            senders.put(key, entry);
+        }
+        entry.lastUsed = now;
+        return entry;
+    }
+
+    /**
+     * Forget all cached decisions, for every sender.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        senders.clear();
+    }
+
+    /**
+     * Forget the cached decisions for one sender.
+     * @param sender A player or other CommandSender.
+     */
+    public void invalidate(CommandSender sender) {
+        senders.remove(senderKey(sender));
+    }
+
+    /**
+     * Get the generation of this cache, which changes whenever it's invalidated for everyone.
+     * @return a number which only goes up.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /** Number of senders with cached decisions. */
+    int size() {
+        return senders.size();
+    }
+
+    /**
+     * Drop senders who haven't been checked for longer than the time to live.
+     */
+    void sweep(long now) {
+        long next = nextSweep.get();
+        if (!nextSweep.compareAndSet(next, now + sweepInterval)) {
+            return;
+        }
+        long currentGeneration = generation.get();
+        for (Map.Entry<Object, SenderEntry> e: senders.entrySet()) {
+            SenderEntry entry = e.getValue();
+            if (entry.generation != currentGeneration || (ttlNanos > 0 && now - entry.lastUsed > ttlNanos)) {
+                senders.remove(e.getKey(), entry);
+            }
+        }
+    }
+
+    /**
+     * How senders are identified in caches: players by UUID, anything else by name.
+     */
+    static Object senderKey(CommandSender sender) {
+        return (sender instanceof Player) ? ((Player) sender).getUniqueId() : sender.getName();
+    }
+
+    private static final class SenderEntry {
+        final long generation;
+        final ConcurrentHashMap<String, Decision> decisions = new ConcurrentHashMap<String, Decision>(8);
+        final ConcurrentHashMap<MondoCommand, TimedSnapshot> snapshots = new ConcurrentHashMap<MondoCommand, TimedSnapshot>(4);
+        volatile long lastUsed;
+
+        SenderEntry(long generation) {
+            this.generation = generation;
+        }
+    }
+
+    private static final class TimedSnapshot {
+        final PermissionSnapshot snapshot;
+        final long expires;
+
+        TimedSnapshot(PermissionSnapshot snapshot, long expires) {
+            this.snapshot = snapshot;
+            this.expires = expires;
+        }
+    }
+
+    private static final class Decision {
+        final boolean allowed;
+        final long expires;
+
+        Decision(boolean allowed, long expires) {
+            this.allowed = allowed;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package mondocommand;
+
+import java.util.BitSet;
+
+/**
+ * Which of a MondoCommand's subcommands one sender may use, by position in the lookup table.
+ *
+ * <p>A snapshot is computed once and then shared by dispatch, usage output,
+ * suggestions and tab completion, which just test or iterate bits. With a
+ * {@link PermissionCache}, snapshots are kept alongside the sender's cached
+ * decisions and recomputed only when those are invalidated or expire, or
+ * when the MondoCommand's subcommands change. The BitSets must never be
+ * modified, since caches use them as keys.
+ */
+final class PermissionSnapshot {
+    final SubCommandTable table;
+    final long commandVersion;
+    /** Subcommands the sender has permission for. */
+    final BitSet permitted;
+    /** Subcommands the sender has permission for and can run from where they are (console or in game). */
+    final BitSet available;
+
+    PermissionSnapshot(SubCommandTable table, long commandVersion, BitSet permitted, BitSet available) {
+        this.table = table;
+        this.commandVersion = commandVersion;
+        this.permitted = permitted;
+        this.available = available;
+    }
+
+    /**
+     * Check if this snapshot was computed for the given state of its MondoCommand.
+     */
+    boolean isValid(SubCommandTable table, long commandVersion) {
+        return this.table == table && this.commandVersion == commandVersion;
+    }
+}
@@ -0,0 +1,140 @@
+package mondocommand;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.bukkit.permissions.PermissionAttachmentInfo;
+
+/**
+ * The permission nodes of a MondoCommand's subcommands, split on dots into a trie.
+ *
+ * <p>Resolving a sender walks each of their effective permissions down
+ * the trie once, recording exact grants and wildcard grants like
+ * <tt>housebuilder.*</tt> on the nodes they reach. Permissions which don't
+ * lead to any of our nodes stop at the first unknown segment. A walk over
+ * the trie then settles every subcommand at once: its own node's grant if
+ * there is one, otherwise the nearest wildcard above it. A wildcard covers
+ * the nodes below it but not its own prefix, so <tt>a.*</tt> grants
+ * <tt>a.b</tt> but not <tt>a</tt>; a lone <tt>*</tt> covers everything.
+ *
+ * <p>Nodes are matched ignoring case, as Bukkit does.
+ */
+final class PermissionTrie {
+    private static final byte UNSET = 0;
+    private static final byte ALLOW = 1;
+    private static final byte DENY = 2;
+
+    private final Node root = new Node(0);
+    private final int nodeCount;
+    /** Positions of subcommands with no permission node, which are always allowed. */
+    private final BitSet unrestricted = new BitSet();
+
+    /**
+     * Build a trie from the permission nodes of the subcommands in a table.
+     */
+    PermissionTrie(SubCommandTable table) {
+        int count = 1;
+        for (int position = 0; position < table.size(); position++) {
+            String permission = table.at(position).getPermission();
+            if (permission == null) {
+                unrestricted.set(position);
+                continue;
+            }
+            Node node = root;
+            for (String segment: split(fold(permission))) {
+                Node child = node.children.get(segment);
+                if (child == null) {
+                    child = new Node(count++);
+                    node.children.put(segment, child);
+                }
+                node = child;
+            }
+            node.positions.add(position);
+        }
+        this.nodeCount = count;
+    }
+
+    /**
+     * Resolve which subcommands a sender's effective permissions allow.
+     * @param effective The sender's effective permissions.
+     * @param permitted Set for each subcommand which is allowed.
+     * @param undecided Set for each subcommand which none of the effective
+     *        permissions mention; the caller should fall back to
+     *        <tt>hasPermission</tt> for those, so permission defaults apply.
+     */
+    void resolve(Set<PermissionAttachmentInfo> effective, BitSet permitted, BitSet undecided) {
+        byte[] exact = new byte[nodeCount];
+        byte[] wildcard = new byte[nodeCount];
+        for (PermissionAttachmentInfo info: effective) {
+            byte value = info.getValue() ? ALLOW : DENY;
+            String name = fold(info.getPermission());
+            Node node = root;
+            int start = 0;
+            while (node != null) {
+                int end = name.indexOf('.', start);
+                if (end < 0) {
+                    end = name.length();
+                }
+                if (end == name.length() && end - start == 1 && name.charAt(start) == '*') {
+                    wildcard[node.id] = value;
+                    break;
+                }
+                node = node.children.get(name.substring(start, end));
+                if (end == name.length()) {
+                    if (node != null) {
+                        exact[node.id] = value;
+                    }
+                    break;
+                }
+                start = end + 1;
+            }
+        }
+        permitted.or(unrestricted);
+        settle(root, UNSET, exact, wildcard, permitted, undecided);
+    }
+
+    private static void settle(Node node, byte inherited, byte[] exact, byte[] wildcard, BitSet permitted, BitSet undecided) {
+        byte decision = (exact[node.id] != UNSET) ? exact[node.id] : inherited;
+        for (int position: node.positions) {
+            if (decision == ALLOW) {
+                permitted.set(position);
+            } else if (decision == UNSET) {
+                undecided.set(position);
+            }
+        }
+        byte below = (wildcard[node.id] != UNSET) ? wildcard[node.id] : inherited;
+        for (Node child: node.children.values()) {
+            settle(child, below, exact, wildcard, permitted, undecided);
+        }
+    }
+
+    private static String fold(String permission) {
+        return permission.toLowerCase(Locale.ENGLISH);
+    }
+
+    private static List<String> split(String permission) {
+        List<String> segments = new ArrayList<String>();
+        int start = 0;
+        int end;
+        while ((end = permission.indexOf('.', start)) >= 0) {
+            segments.add(permission.substring(start, end));
+            start = end + 1;
+        }
+        segments.add(permission.substring(start));
+        return segments;
+    }
+
+    private static final class Node {
+        final int id;
+        final HashMap<String, Node> children = new HashMap<String, Node>(4);
+        final List<Integer> positions = new ArrayList<Integer>(1);
+
+        Node(int id) {
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package mondocommand;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bukkit.command.CommandSender;
+
+/**
+ * A per-sender rate limit for one subcommand.
+ *
+ * <p>This is the generic cell rate algorithm, which behaves like a token
+ * bucket but only needs one number per sender: the "theoretical arrival
+ * time" at which their bucket will be full again. Each use pushes it
+ * forward by one interval, and a use is refused if that would put it more
+ * than a burst's worth of intervals ahead of now. Checking a sender is a
+ * map lookup and a compare-and-set, with no locking.
+ *
+ * <p>Senders whose buckets have refilled are dropped now and then, so the
+ * map only holds senders who've used the command recently. Players are
+ * tracked by UUID, anything else by name.
+ */
+final class RateLimiter {
+    /** Marks a bucket which has been removed from the map. */
+    private static final long DEAD = Long.MIN_VALUE;
+
+    private final int permits;
+    private final long periodNanos;
+    private final long interval;
+    private final long tolerance;
+    private final ConcurrentHashMap<Object, AtomicLong> buckets = new ConcurrentHashMap<Object, AtomicLong>();
+    private final AtomicLong nextSweep;
+
+    /**
+     * Create a new RateLimiter.
+     * @param permits How many uses are allowed in each period, including in a burst.
+     * @param period The length of the period.
+     * @param unit The unit of period.
+     */
+    RateLimiter(int permits, long period, TimeUnit unit) {
+        this.permits = permits;
+        this.periodNanos = unit.toNanos(period);
+        this.interval = periodNanos / permits;
+        this.tolerance = periodNanos - interval;
+        this.nextSweep = new AtomicLong(System.nanoTime() + periodNanos);
+    }
+
+    /** Uses allowed per period. */
+    int getPermits() {
+        return permits;
+    }
+
+    /** The length of the period, in nanoseconds. */
+    long getPeriodNanos() {
+        return periodNanos;
+    }
+
+    /**
+     * Try to use the command.
+     * @param sender Who's using it.
+     * @return 0 if allowed, otherwise how many nanoseconds until it will be.
+     */
+    long tryAcquire(CommandSender sender) {
+        return tryAcquire(PermissionCache.senderKey(sender), System.nanoTime());
+    }
+
+    long tryAcquire(Object key, long now) {
+        if (now - nextSweep.get() >= 0) {
+            sweep(now);
+        }
+        while (true) {
+            AtomicLong bucket = buckets.get(key);
+            if (bucket == null) {
+                if (buckets.putIfAbsent(key, new AtomicLong(now + interval)) == null) {
+                    return 0;
+                }
+                continue;
+            }
+            long tat = bucket.get();
+            if (tat == DEAD) {
+                buckets.remove(key, bucket);
+                continue;
+            }
+            long start = (tat - now > 0) ? tat : now;
+            long wait = start - now - tolerance;
+            if (wait > 0) {
+                return wait;
+            }
+            if (bucket.compareAndSet(tat, start + interval)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Drop the buckets of senders whose limit has fully reset.
+     * @param now The current System.nanoTime().
+     */
+    void sweep(long now) {
+        long next = nextSweep.get();
+        if (!nextSweep.compareAndSet(next, now + periodNanos)) {
+            return;
+        }
+        for (Map.Entry<Object, AtomicLong> e: buckets.entrySet()) {
+            AtomicLong bucket = e.getValue();
+            long tat = bucket.get();
+            // Mark it dead first, so a sender racing with us starts a fresh bucket instead of using this one.
+            if (tat != DEAD && tat - now <= 0 && bucket.compareAndSet(tat, DEAD)) {
+                buckets.remove(e.getKey(), bucket);
+            }
+        }
+    }
+
+    /** Number of senders being tracked. */
+    int size() {
+        return buckets.size();
+    }
+}
@@ -1,5 +1,10 @@
 package mondocommand;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.commons.lang.Validate;
 import org.bukkit.command.CommandSender;
 
@@ -9,6 +14,8 @@ import org.bukkit.command.CommandSender;
  *
  */
 public final class SubCommand {
+    private static final String[] NO_ALIASES = new String[0];
+
     private final String name;
     private final String permission;
     private boolean allow_console = false;
@@ -16,6 +23,12 @@ public final class SubCommand {
     private SubHandler handler = null;
     private String description;
     private String usage = null;
+    private volatile String[] aliases = NO_ALIASES;
+    private boolean async = false;
+    private volatile RateLimiter rateLimiter = null;
+    private volatile CommandInterceptor[] interceptors = SubCommandTable.NO_INTERCEPTORS;
+    private MondoCommand owner = null;
+    private volatile boolean frozen = false;
     
     /**
      * Create a new SubCommand.
@@ -33,7 +46,9 @@ public final class SubCommand {
      * If this is not set, then the command only works for players.
      */
     public SubCommand allowConsole() {
+        checkMutable();
         this.allow_console = true;
+        changed();
         return this;
     }
     
@@ -58,10 +73,129 @@ public final class SubCommand {
      */
     public SubCommand setMinArgs(int minArgs) {
         Validate.isTrue(minArgs >= 0, "minArgs cannot be negative");
+        checkMutable();
         this.minArgs = minArgs;
         return this;
     }
 
+    /**
+     * Check if this command's handler runs off the main thread.
+     * @return true if the handler is run by the MondoCommand's async executor.
+     */
+    public boolean isAsync() {
+        return async;
+    }
+
+    /**
+     * Run this command's handler on the MondoCommand's async executor.
+     *
+     * <p>Use this for handlers which do slow things like database or file
+     * access, so they don't hold up the server. Permission and argument
+     * checks still happen on the calling thread. Replies are batched and
+     * sent from the main thread; anything else touching the Bukkit API
+     * should go through {@link CallInfo#runOnMainThread}.
+     *
+     * <p>If the handler is a nested MondoCommand, the handlers of all its
+     * subcommands run asynchronously.
+     *
+     * <p>The MondoCommand (or a parent) must have an async executor and a
+     * main thread executor, so handlers run on a pool the plugin controls
+     * and replies and {@link CallInfo#runOnMainThread} tasks really do get
+     * back to the server thread; otherwise dispatching this throws
+     * IllegalStateException.
+     *
+     * @param async true to run the handler asynchronously.
+     * @return the SubCommand, useful for chaining.
+     * @see MondoCommand#setAsyncExecutor
+     */
+    public SubCommand setAsync(boolean async) {
+        checkMutable();
+        this.async = async;
+        return this;
+    }
+
+    /**
+     * Limit how often each player (or console) can use this command.
+     *
+     * <p>Up to <tt>permits</tt> uses are allowed in a burst, after which
+     * uses are allowed again at a steady rate of <tt>permits</tt> per
+     * <tt>period</tt>. Uses over the limit get the FormatConfig's cooldown
+     * message, and the handler isn't called. The check happens after the
+     * permission and argument checks.
+     *
+     * @param permits How many uses are allowed per period. Must be at least 1.
+     * @param period The length of the period.
+     * @param unit The unit of period.
+     * @return the SubCommand, useful for chaining.
+     */
+    public SubCommand setRateLimit(int permits, long period, TimeUnit unit) {
+        Validate.isTrue(permits >= 1, "permits must be at least 1");
+        Validate.isTrue(period > 0, "period must be positive");
+        Validate.notNull(unit);
+        checkMutable();
+        this.rateLimiter = new RateLimiter(permits, period, unit);
+        return this;
+    }
+
+    /**
+     * Make each player (or console) wait between uses of this command.
+     *
+     * <p>This is the same as <tt>setRateLimit(1, cooldown, unit)</tt>.
+     *
+     * @param cooldown How long to wait between uses.
+     * @param unit The unit of cooldown.
+     * @return the SubCommand, useful for chaining.
+     */
+    public SubCommand setCooldown(long cooldown, TimeUnit unit) {
+        return setRateLimit(1, cooldown, unit);
+    }
+
+    /**
+     * Remove any rate limit or cooldown.
+     * @return the SubCommand, useful for chaining.
+     */
+    public SubCommand clearRateLimit() {
+        checkMutable();
+        this.rateLimiter = null;
+        return this;
+    }
+
+    /** The rate limiter for this command, or null if it's not limited. */
+    RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Add an interceptor which runs around this command's handler.
+     *
+     * <p>It runs after any interceptors added to the MondoCommand.
+     *
+     * @param interceptor A CommandInterceptor.
+     * @return the SubCommand, useful for chaining.
+     */
+    public SubCommand addInterceptor(CommandInterceptor interceptor) {
+        Validate.notNull(interceptor);
+        checkMutable();
+        interceptors = SubCommandTable.concat(interceptors, new CommandInterceptor[] {interceptor});
+        if (owner != null) {
+            owner.tableChanged();
+        }
+        return this;
+    }
+
+    /**
+     * Get the interceptors added to this command.
+     * @return A read-only list of interceptors, in the order they run.
+     */
+    public List<CommandInterceptor> getInterceptors() {
+        return Collections.unmodifiableList(Arrays.asList(interceptors));
+    }
+
+    /** The interceptors as an array, for building the lookup table. Don't modify. */
+    CommandInterceptor[] getInterceptorArray() {
+        return interceptors;
+    }
+
     /**
      * Get the currently set SubHandler.
      * @return the SubHandler which is called when this command executes.
@@ -77,6 +211,7 @@ public final class SubCommand {
      */
     public SubCommand setHandler(SubHandler handler) {
         Validate.notNull(handler);
+        checkMutable();
         this.handler = handler;
         return this;
     }
@@ -89,6 +224,42 @@ public final class SubCommand {
         return name;
     }
     
+    /**
+     * Add another name this command can be run by.
+     *
+     * <p>An alias runs the same SubCommand, with the same permission and
+     * handler; it isn't listed separately in usage output or tab completion.
+     *
+     * @param alias The alternate name.
+     * @return the SubCommand, useful for chaining.
+     * @throws IllegalArgumentException if the alias is already used by another subcommand.
+     */
+    public SubCommand addAlias(String alias) {
+        Validate.notEmpty(alias);
+        checkMutable();
+        if (owner != null) {
+            owner.addAlias(this, alias);
+        } else {
+            appendAlias(alias);
+        }
+        return this;
+    }
+
+    /**
+     * Get the alternate names of this command.
+     * @return A read-only list of aliases, in the order they were added.
+     */
+    public List<String> getAliases() {
+        return Collections.unmodifiableList(Arrays.asList(aliases));
+    }
+
+    /** Add to the alias list; MondoCommand calls this once it has checked for clashes. */
+    void appendAlias(String alias) {
+        String[] updated = Arrays.copyOf(aliases, aliases.length + 1);
+        updated[aliases.length] = alias;
+        aliases = updated;
+    }
+
     /**
      * Get the usage string.
      * @return The usage string.
@@ -108,7 +279,9 @@ public final class SubCommand {
      * @return the SubCommand, useful for chaining.
      */
     public SubCommand setUsage(String usage) {
+        checkMutable();
         this.usage = usage;
+        changed();
         return this;
     }
 
@@ -130,7 +303,9 @@ public final class SubCommand {
      * @return the SubCommand, useful for chaining.
      */
     public SubCommand setDescription(String description) {
+        checkMutable();
         this.description = description;
+        changed();
         return this;
     }
     
@@ -151,4 +326,37 @@ public final class SubCommand {
         if (permission == null) return true;
         return sender.hasPermission(permission);
     }
+
+    /** Set the MondoCommand this belongs to, so it can be told about changes. */
+    void setOwner(MondoCommand owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * Make this SubCommand read-only; called when its MondoCommand is frozen.
+     */
+    void freeze() {
+        this.frozen = true;
+    }
+
+    /**
+     * Check if this SubCommand has been frozen.
+     * @return true if this can no longer be changed.
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkMutable() {
+        if (frozen) {
+            throw new IllegalStateException("SubCommand '" + name + "' cannot be changed after its MondoCommand is frozen");
+        }
+    }
+
+    /** Let our MondoCommand know that anything cached about us is out of date. */
+    private void changed() {
+        if (owner != null) {
+            owner.invalidate();
+        }
+    }
 }
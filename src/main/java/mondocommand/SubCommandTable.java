@@ -0,0 +1,452 @@
+package mondocommand;
+
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable lookup table of subcommands, built from a MondoCommand's registrations.
+ *
+ * <p>Names are placed with hash-and-displace (CHD): each name hashes to a
+ * bucket and a slot-hash, and each bucket stores a displacement, chosen
+ * when the table is built, which moves its names' slots until no two names
+ * share one. The slot array is at most four times the number of names. A
+ * lookup is then one pass over the name's characters, two array reads and
+ * one string comparison. The hash is computed from the characters with a
+ * seed, so names with the same String.hashCode() aren't stuck together;
+ * if no seed separates them anyway, the table falls back to a HashMap.
+ *
+ * <p>Names are matched case-insensitively by folding each character with
+ * {@link Character#toLowerCase(char)} while hashing and comparing, so
+ * looking up user input allocates nothing and doesn't depend on the
+ * default locale (the Turkish dotless i problem with String.toLowerCase).
+ *
+ * <p>The table also keeps the subcommands in registration order; a
+ * subcommand's position in that order is its index for usage screens and
+ * permission sets.
+ *
+ * <p>Aliases of a subcommand are looked up through the same table, but
+ * share its position, so everything keyed by position sees the subcommand
+ * once however many names it has. If an alias clashes with another
+ * subcommand's name, the name wins.
+ *
+ * <p>Each subcommand's {@link CommandInterceptor}s, including those
+ * registered on the MondoCommand, are flattened into one array when the
+ * table is built, so dispatch just walks it.
+ *
+ * <p>A {@link SuggestionTree} of the names is built along with the table,
+ * for suggesting the closest names when a lookup misses, along with the
+ * names sorted alphabetically, for tab completion. A {@link PermissionTrie}
+ * of the subcommands' permission nodes is built the first time it's needed.
+ */
+final class SubCommandTable {
+    private static final int MAX_SEED_ATTEMPTS = 16;
+    private static final int MAX_DISPLACEMENT = 1 << 16;
+    static final CommandInterceptor[] NO_INTERCEPTORS = new CommandInterceptor[0];
+
+    private final String[] keys;
+    /** The position of the subcommand in each slot, parallel to keys. */
+    private final int[] slots;
+    /** The displacement of each bucket. */
+    private final int[] displacements;
+    /** Folded names to positions, used instead of the slots if no seed worked. */
+    private final Map<String, Integer> fallback;
+    private final SubCommand[] ordered;
+    /** The interceptors to run for each subcommand, by position. */
+    private final CommandInterceptor[][] chains;
+    /** Folded names and aliases; the first ordered.length are the names, in order. */
+    private final String[] names;
+    /** Names and aliases as registered, parallel to names. */
+    private final String[] displayNames;
+    /** The position of the subcommand each name belongs to, parallel to names. */
+    private final int[] positions;
+    private final int[] byName;
+    private final SuggestionTree suggestions;
+    private final int mask;
+    private final int bucketMask;
+    private final long seed;
+    private volatile PermissionTrie permissionTrie;
+
+    private SubCommandTable(Placement placement, SubCommand[] ordered, CommandInterceptor[][] chains,
+                            String[] names, String[] displayNames, int[] positions) {
+        this.keys = placement.keys;
+        this.slots = placement.slots;
+        this.displacements = placement.displacements;
+        this.fallback = placement.fallback;
+        this.ordered = ordered;
+        this.chains = chains;
+        this.names = names;
+        this.displayNames = displayNames;
+        this.positions = positions;
+        this.byName = sortByName(names);
+        this.suggestions = SuggestionTree.build(names, positions);
+        this.mask = keys.length - 1;
+        this.bucketMask = displacements.length - 1;
+        this.seed = placement.seed;
+    }
+
+    /**
+     * Fold a name to the form used as a table key.
+     * @param name A subcommand name.
+     * @return The name with every character lowercased, locale-independently.
+     */
+    static String fold(String name) {
+        char[] chars = new char[name.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = fold(name.charAt(i));
+        }
+        return new String(chars);
+    }
+
+    private static char fold(char c) {
+        if (c < 128) {
+            return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(c);
+    }
+
+    /**
+     * Hash a name as if it had been folded, with a seed.
+     *
+     * <p>This is 64-bit FNV-1a over the folded characters, starting from
+     * the seed, then scrambled so every output bit depends on every input
+     * bit. The high half picks the bucket and the low half the slot.
+     */
+    private static long foldedHash(String name, long seed) {
+        long h = 0xCBF29CE484222325L ^ (seed * 0x9E3779B97F4A7C15L);
+        for (int i = 0; i < name.length(); i++) {
+            h = (h ^ fold(name.charAt(i))) * 0x100000001B3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    /**
+     * Build a table from a map of folded names to subcommands.
+     * @param subcommands Subcommands in registration order.
+     * @param interceptors Interceptors for every subcommand, run before each one's own.
+     * @return a new SubCommandTable.
+     */
+    static SubCommandTable build(Map<String, SubCommand> subcommands, CommandInterceptor[] interceptors) {
+        int count = subcommands.size();
+        SubCommand[] ordered = subcommands.values().toArray(new SubCommand[count]);
+        CommandInterceptor[][] chains = new CommandInterceptor[count][];
+        for (int i = 0; i < count; i++) {
+            chains[i] = concat(interceptors, ordered[i].getInterceptorArray());
+        }
+        Map<String, Integer> all = new LinkedHashMap<String, Integer>();
+        List<String> display = new ArrayList<String>();
+        int position = 0;
+        for (Map.Entry<String, SubCommand> e: subcommands.entrySet()) {
+            all.put(e.getKey(), position++);
+            display.add(e.getValue().getName());
+        }
+        for (position = 0; position < count; position++) {
+            for (String alias: ordered[position].getAliases()) {
+                String folded = fold(alias);
+                if (!all.containsKey(folded)) {
+                    all.put(folded, position);
+                    display.add(alias);
+                }
+            }
+        }
+        String[] names = all.keySet().toArray(new String[all.size()]);
+        int[] positions = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            positions[i] = all.get(names[i]);
+        }
+        return new SubCommandTable(
+            place(names, positions), ordered, chains, names,
+            display.toArray(new String[names.length]), positions
+        );
+    }
+
+    /**
+     * Work out where each name goes, trying seeds until one places every name.
+     */
+    private static Placement place(String[] names, int[] positions) {
+        int size = Integer.highestOneBit(Math.max(1, names.length * 2 - 1)) << 1;
+        int buckets = Integer.highestOneBit(Math.max(1, names.length / 2)) << 1;
+        for (long seed = 0; seed < MAX_SEED_ATTEMPTS; seed++) {
+            Placement placement = new Placement(size, buckets, seed);
+            if (placement.place(names, positions)) {
+                return placement;
+            }
+        }
+        Placement placement = new Placement(1, 1, 0);
+        placement.fallback = new HashMap<String, Integer>(names.length * 2);
+        for (int i = 0; i < names.length; i++) {
+            placement.fallback.put(names[i], positions[i]);
+        }
+        return placement;
+    }
+
+    /**
+     * The slot for a hash, given its bucket's displacement.
+     */
+    private static int slot(long hash, int displacement, int mask) {
+        int h = (int) hash ^ (displacement * 0x9E3779B9);
+        h *= 0x85EBCA6B;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * The arrays of a table being built.
+     */
+    private static final class Placement {
+        final String[] keys;
+        final int[] slots;
+        final int[] displacements;
+        final long seed;
+        Map<String, Integer> fallback = null;
+
+        Placement(int size, int buckets, long seed) {
+            this.keys = new String[size];
+            this.slots = new int[size];
+            this.displacements = new int[buckets];
+            this.seed = seed;
+        }
+
+        /**
+         * Place the names, the fullest buckets first, as those are the hardest to fit.
+         * @return false if some bucket couldn't be placed with this seed.
+         */
+        boolean place(String[] names, int[] positions) {
+            int mask = keys.length - 1;
+            int bucketMask = displacements.length - 1;
+            final long[] hashes = new long[names.length];
+            final int[] bucketSizes = new int[displacements.length];
+            List<List<Integer>> members = new ArrayList<List<Integer>>(displacements.length);
+            for (int b = 0; b < displacements.length; b++) {
+                members.add(new ArrayList<Integer>(2));
+            }
+            for (int i = 0; i < names.length; i++) {
+                hashes[i] = foldedHash(names[i], seed);
+                int b = (int) (hashes[i] >>> 32) & bucketMask;
+                members.get(b).add(i);
+                bucketSizes[b]++;
+            }
+            Integer[] order = new Integer[displacements.length];
+            for (int b = 0; b < order.length; b++) {
+                order[b] = b;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return bucketSizes[b] - bucketSizes[a];
+                }
+            });
+            int[] taken = new int[4];
+            for (Integer b: order) {
+                List<Integer> bucket = members.get(b);
+                if (bucket.isEmpty()) {
+                    break;
+                }
+                if (taken.length < bucket.size()) {
+                    taken = new int[bucket.size()];
+                }
+                int displacement = 0;
+                while (!fits(bucket, hashes, displacement, mask, taken)) {
+                    if (++displacement == MAX_DISPLACEMENT) {
+                        return false;
+                    }
+                }
+                displacements[b] = displacement;
+                for (int i = 0; i < bucket.size(); i++) {
+                    int name = bucket.get(i);
+                    keys[taken[i]] = names[name];
+                    slots[taken[i]] = positions[name];
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Check if a bucket's names all land in free, distinct slots with a displacement.
+         * @param taken Filled in with the slots, parallel to bucket.
+         */
+        private boolean fits(List<Integer> bucket, long[] hashes, int displacement, int mask, int[] taken) {
+            for (int i = 0; i < bucket.size(); i++) {
+                int slot = slot(hashes[bucket.get(i)], displacement, mask);
+                if (keys[slot] != null) {
+                    return false;
+                }
+                for (int j = 0; j < i; j++) {
+                    if (taken[j] == slot) {
+                        return false;
+                    }
+                }
+                taken[i] = slot;
+            }
+            return true;
+        }
+    }
+
+    private static int[] sortByName(final String[] names) {
+        Integer[] indices = new Integer[names.length];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = i;
+        }
+        Arrays.sort(indices, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return names[a].compareTo(names[b]);
+            }
+        });
+        int[] result = new int[indices.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = indices[i];
+        }
+        return result;
+    }
+
+    /**
+     * Find a subcommand, ignoring case.
+     * @param name The subcommand name as typed.
+     * @return The SubCommand, or null if there's none by that name.
+     */
+    SubCommand get(String name) {
+        int position = find(name);
+        return (position < 0) ? null : ordered[position];
+    }
+
+    /**
+     * Find the position of a subcommand, ignoring case.
+     * @param name The subcommand name as typed.
+     * @return The position, or -1 if there's none by that name.
+     */
+    int find(String name) {
+        if (fallback != null) {
+            Integer position = fallback.get(fold(name));
+            return (position == null) ? -1 : position;
+        }
+        long hash = foldedHash(name, seed);
+        int slot = slot(hash, displacements[(int) (hash >>> 32) & bucketMask], mask);
+        String key = keys[slot];
+        if (key == null || key.length() != name.length()) {
+            return -1;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) != fold(name.charAt(i))) {
+                return -1;
+            }
+        }
+        return slots[slot];
+    }
+
+    /**
+     * Get the interceptors to run for a subcommand: the MondoCommand's, then the subcommand's own.
+     * @param index The subcommand's position. Don't modify the result.
+     */
+    CommandInterceptor[] interceptors(int index) {
+        return chains[index];
+    }
+
+    /**
+     * Join two interceptor arrays, avoiding a copy if either is empty.
+     */
+    static CommandInterceptor[] concat(CommandInterceptor[] first, CommandInterceptor[] second) {
+        if (first.length == 0) {
+            return second;
+        } else if (second.length == 0) {
+            return first;
+        }
+        CommandInterceptor[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    /**
+     * Find the subcommands whose names are close to a mistyped name.
+     * @param name The name as typed.
+     * @param maxDistance The most edits to allow.
+     * @return The edit distance of each subcommand by position (the closest
+     *         of its name and aliases), -1 where it's too far away, or null
+     *         if nothing is close.
+     */
+    int[] suggest(String name, int maxDistance) {
+        int[] distances = new int[ordered.length];
+        Arrays.fill(distances, -1);
+        return suggestions.search(fold(name), maxDistance, distances) ? distances : null;
+    }
+
+    /**
+     * Get the permission nodes of the subcommands as a trie, for resolving wildcards.
+     */
+    PermissionTrie permissionTrie() {
+        PermissionTrie trie = permissionTrie;
+        if (trie == null) {
+            trie = new PermissionTrie(this);
+            permissionTrie = trie;
+        }
+        return trie;
+    }
+
+    /** Number of subcommands. */
+    int size() {
+        return ordered.length;
+    }
+
+    /**
+     * Get a subcommand by its position in registration order.
+     */
+    SubCommand at(int index) {
+        return ordered[index];
+    }
+
+    /** Number of slots in the lookup array. */
+    int slotCount() {
+        return keys.length;
+    }
+
+    /** Number of names, counting aliases. */
+    int nameCount() {
+        return names.length;
+    }
+
+    /**
+     * Get a folded name or alias.
+     * @param nameIndex An index into the names, as from {@link #byName}.
+     */
+    String key(int nameIndex) {
+        return names[nameIndex];
+    }
+
+    /**
+     * Get a name or alias as it was registered.
+     * @param nameIndex An index into the names, as from {@link #byName}.
+     */
+    String displayName(int nameIndex) {
+        return displayNames[nameIndex];
+    }
+
+    /**
+     * Get the position of the subcommand a name or alias belongs to.
+     * @param nameIndex An index into the names, as from {@link #byName}.
+     */
+    int positionOf(int nameIndex) {
+        return positions[nameIndex];
+    }
+
+    /**
+     * Check if a name is the subcommand's own name rather than an alias.
+     * @param nameIndex An index into the names, as from {@link #byName}.
+     */
+    boolean isPrimary(int nameIndex) {
+        return nameIndex < ordered.length;
+    }
+
+    /**
+     * Indices of all names and aliases, in alphabetical order of their folded form. Don't modify.
+     */
+    int[] byName() {
+        return byName;
+    }
+}
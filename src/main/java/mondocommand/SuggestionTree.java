@@ -0,0 +1,143 @@
+package mondocommand;
+
+import java.util.Arrays;
+
+/**
+ * A BK-tree of subcommand names, for finding near misses of a mistyped name.
+ *
+ * <p>Each child of a node is filed under its edit distance from that node,
+ * so a search for names within <i>n</i> edits only has to descend into
+ * children whose distance is within <i>n</i> of the query's distance to
+ * the node. With a few dozen subcommands most of the tree is never visited.
+ *
+ * <p>Names are expected to be folded already (see {@link SubCommandTable#fold}).
+ */
+final class SuggestionTree {
+    private final Node root;
+
+    private SuggestionTree(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Build a tree from a list of names.
+     * @param names Folded names.
+     * @param indices The index to report in search results for each name.
+     *        Several names may share an index.
+     * @return a new SuggestionTree.
+     */
+    static SuggestionTree build(String[] names, int[] indices) {
+        Node root = null;
+        for (int i = 0; i < names.length; i++) {
+            if (root == null) {
+                root = new Node(names[i], indices[i]);
+            } else {
+                root.add(new Node(names[i], indices[i]));
+            }
+        }
+        return new SuggestionTree(root);
+    }
+
+    /**
+     * Find every name within a number of edits of a word.
+     *
+     * <p>A name is only considered a match if the word keeps at least one
+     * of its characters, so single letters don't suggest every other
+     * single letter.
+     *
+     * @param word The folded word to look for.
+     * @param maxDistance The most edits allowed.
+     * @param distances Filled in with the distance of each matching name,
+     *        by index, keeping the smallest where names share an index;
+     *        indices which don't match are left alone.
+     * @return true if anything matched.
+     */
+    boolean search(String word, int maxDistance, int[] distances) {
+        return root != null && root.search(word, maxDistance, distances);
+    }
+
+    /**
+     * The Levenshtein distance between two strings.
+     */
+    static int distance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j < previous.length; j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = (ca == b.charAt(j - 1)) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    private static final class Node {
+        private static final int[] NO_DISTANCES = new int[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        final String name;
+        final int index;
+        /** Distances of the children, sorted, parallel to children. */
+        int[] childDistances = NO_DISTANCES;
+        Node[] children = NO_CHILDREN;
+
+        Node(String name, int index) {
+            this.name = name;
+            this.index = index;
+        }
+
+        void add(Node node) {
+            Node parent = this;
+            while (true) {
+                int d = distance(node.name, parent.name);
+                int pos = Arrays.binarySearch(parent.childDistances, d);
+                if (pos >= 0) {
+                    parent = parent.children[pos];
+                    continue;
+                }
+                pos = -(pos + 1);
+                int n = parent.children.length;
+                int[] distances = new int[n + 1];
+                Node[] children = new Node[n + 1];
+                System.arraycopy(parent.childDistances, 0, distances, 0, pos);
+                System.arraycopy(parent.children, 0, children, 0, pos);
+                distances[pos] = d;
+                children[pos] = node;
+                System.arraycopy(parent.childDistances, pos, distances, pos + 1, n - pos);
+                System.arraycopy(parent.children, pos, children, pos + 1, n - pos);
+                parent.childDistances = distances;
+                parent.children = children;
+                return;
+            }
+        }
+
+        boolean search(String word, int maxDistance, int[] distances) {
+            boolean found = false;
+            int d = distance(word, name);
+            if (d <= maxDistance && d < name.length()) {
+                if (distances[index] < 0 || d < distances[index]) {
+                    distances[index] = d;
+                }
+                found = true;
+            }
+            for (int i = 0; i < children.length; i++) {
+                int childDistance = childDistances[i];
+                if (childDistance > d + maxDistance) {
+                    break;
+                }
+                if (childDistance >= d - maxDistance) {
+                    found |= children[i].search(word, maxDistance, distances);
+                }
+            }
+            return found;
+        }
+    }
+}
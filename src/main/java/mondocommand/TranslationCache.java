@@ -0,0 +1,204 @@
+package mondocommand;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A size-bounded, thread-safe cache of compiled templates.
+ *
+ * <p>Lookups are lock-free reads against a ConcurrentHashMap. Each entry
+ * keeps a small saturating use counter, and when the cache grows past its
+ * bound the least frequently used entries are dropped and the survivors'
+ * counters are halved, so templates that used to be hot eventually age out.
+ * This keeps the heavily used templates resident even when lots of one-off
+ * templates churn through the cache.
+ *
+ * <p>Entries are tagged with the {@link ColorScope} generation they were
+ * compiled under; an entry from a different generation is treated as a miss
+ * and replaced in place, so alias changes never require clearing the cache.
+ *
+ * <p>Hit, miss and eviction counts are kept in {@link LongAdder}s so they
+ * stay cheap under contention; see {@link #stats}.
+ */
+final class TranslationCache {
+    private static final int MAX_FREQUENCY = 15;
+
+    private volatile int maxSize;
+    private volatile int targetSize;
+    private final ConcurrentHashMap<String, Entry> entries;
+    private final AtomicBoolean evicting = new AtomicBoolean(false);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder translationNanos = new LongAdder();
+
+    /**
+     * Create a new TranslationCache.
+     * @param maxSize The number of entries at which eviction kicks in.
+     */
+    TranslationCache(int maxSize) {
+        this.entries = new ConcurrentHashMap<String, Entry>(Math.min(maxSize, 1024));
+        setMaxSize(maxSize);
+    }
+
+    /**
+     * Change the number of entries at which eviction kicks in.
+     *
+     * <p>If the cache is already bigger, it's trimmed straight away.
+     *
+     * @param maxSize The new bound.
+     */
+    void setMaxSize(int maxSize) {
+        this.targetSize = maxSize - (maxSize / 5);
+        this.maxSize = maxSize;
+        if (entries.size() > maxSize) {
+            evict();
+        }
+    }
+
+    /** The number of entries at which eviction kicks in. */
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Look up a compiled template, recording the use.
+     * @param template The raw template string.
+     * @param generation The alias generation the caller expects.
+     * @return The compiled template, or null if it's not cached or stale.
+     */
+    ChatTemplate get(String template, long generation) {
+        Entry entry = entries.get(template);
+        if (entry == null || entry.generation != generation) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        // Plain, racy writes: they can lose a count now and then, which is fine
+        // for a heuristic, and don't force a memory fence on every hit.
+        int frequency = entry.frequency;
+        if (frequency < MAX_FREQUENCY) {
+            entry.frequency = frequency + 1;
+        }
+        entry.uses++;
+        return entry.compiled;
+    }
+
+    /**
+     * Add a compiled template to the cache, replacing any stale entry.
+     * @param template The raw template string.
+     * @param compiled The compiled form.
+     * @param generation The alias generation the template was compiled under.
+     * @return The cached template; if another thread won the race, its copy.
+     */
+    ChatTemplate put(String template, ChatTemplate compiled, long generation) {
+        Entry fresh = new Entry(compiled, generation);
+        Entry existing;
+        while ((existing = entries.putIfAbsent(template, fresh)) != null) {
+            if (existing.generation >= generation) {
+                return existing.compiled;
+            } else if (entries.replace(template, existing, fresh)) {
+                fresh.frequency = existing.frequency;
+                fresh.uses = existing.uses;
+                return compiled;
+            }
+        }
+        if (entries.size() > maxSize) {
+            evict();
+        }
+        return compiled;
+    }
+
+    /** The number of cached templates. */
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Record time spent translating a template which missed the cache.
+     * @param nanos Elapsed time in nanoseconds.
+     */
+    void recordTranslation(long nanos) {
+        translationNanos.add(nanos);
+    }
+
+    /**
+     * Take a snapshot of this cache's statistics.
+     * @param topCount How many of the most used templates to include.
+     * @return a new TranslationStats.
+     */
+    TranslationStats stats(int topCount) {
+        List<Map.Entry<String, Entry>> all = new ArrayList<Map.Entry<String, Entry>>(entries.entrySet());
+        Collections.sort(all, new Comparator<Map.Entry<String, Entry>>() {
+            @Override
+            public int compare(Map.Entry<String, Entry> a, Map.Entry<String, Entry> b) {
+                return Long.compare(b.getValue().uses, a.getValue().uses);
+            }
+        });
+        Map<String, Long> top = new LinkedHashMap<String, Long>();
+        for (Map.Entry<String, Entry> e: all.subList(0, Math.min(topCount, all.size()))) {
+            top.put(e.getKey(), e.getValue().uses);
+        }
+        return new TranslationStats(
+            hits.sum(), misses.sum(), evictions.sum(), all.size(), translationNanos.sum(), top
+        );
+    }
+
+    /**
+     * Drop the least frequently used entries until we're back to the target size.
+     *
+     * <p>Only one thread evicts at a time; anyone else who pushes the cache
+     * over the limit meanwhile just carries on.
+     */
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            // Bucket the entries by frequency so we don't have to sort them.
+            List<List<Map.Entry<String, Entry>>> buckets = new ArrayList<List<Map.Entry<String, Entry>>>(MAX_FREQUENCY + 1);
+            for (int i = 0; i <= MAX_FREQUENCY; i++) {
+                buckets.add(new ArrayList<Map.Entry<String, Entry>>());
+            }
+            for (Map.Entry<String, Entry> e: entries.entrySet()) {
+                buckets.get(e.getValue().frequency).add(e);
+            }
+            int toRemove = entries.size() - targetSize;
+            for (List<Map.Entry<String, Entry>> bucket: buckets) {
+                for (Map.Entry<String, Entry> e: bucket) {
+                    if (toRemove <= 0) break;
+                    if (entries.remove(e.getKey(), e.getValue())) {
+                        evictions.increment();
+                        toRemove--;
+                    }
+                }
+            }
+            for (Entry entry: entries.values()) {
+                entry.frequency = entry.frequency >> 1;
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private static final class Entry {
+        final ChatTemplate compiled;
+        final long generation;
+        /** Not volatile: eviction and stats only need a recent value, not an exact one. */
+        int frequency = 1;
+        /** Total lookups, for statistics only; approximate under contention. */
+        long uses = 0;
+
+        Entry(ChatTemplate compiled, long generation) {
+            this.compiled = compiled;
+            this.generation = generation;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package mondocommand;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A snapshot of statistics for a {@link ColorScope}'s translation cache.
+ *
+ * <p>Use these to tell whether the cache fits your workload: a low hit rate
+ * with lots of evictions usually means variable text is being joined into
+ * templates instead of passed as <tt>%s</tt> arguments.
+ *
+ * @see ChatMagic#getStats
+ */
+public final class TranslationStats {
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final int size;
+    private final long translationNanos;
+    private final Map<String, Long> topTemplates;
+
+    TranslationStats(long hits, long misses, long evictions, int size, long translationNanos, Map<String, Long> topTemplates) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+        this.translationNanos = translationNanos;
+        this.topTemplates = Collections.unmodifiableMap(topTemplates);
+    }
+
+    /** Number of lookups which found a current compiled template. */
+    public long getHits() {
+        return hits;
+    }
+
+    /** Number of lookups which had to translate the template. */
+    public long getMisses() {
+        return misses;
+    }
+
+    /** Fraction of lookups which were hits, or 0 if there were no lookups. */
+    public double getHitRate() {
+        long total = hits + misses;
+        return (total == 0) ? 0.0 : (double) hits / total;
+    }
+
+    /** Number of templates dropped to keep the cache within its size bound. */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /** Number of templates currently cached. */
+    public int getSize() {
+        return size;
+    }
+
+    /** Total time spent translating templates on cache misses, in nanoseconds. */
+    public long getTranslationNanos() {
+        return translationNanos;
+    }
+
+    /**
+     * The most used templates currently cached, most used first.
+     * @return an unmodifiable map of template to approximate number of uses.
+     */
+    public Map<String, Long> getTopTemplates() {
+        return topTemplates;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+            "TranslationStats(hits=%d, misses=%d, evictions=%d, size=%d, translationNanos=%d)",
+            hits, misses, evictions, size, translationNanos
+        );
+    }
+}
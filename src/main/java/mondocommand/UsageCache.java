@@ -0,0 +1,127 @@
+package mondocommand;
+
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rendered usage screens, keyed by command label and the set of subcommands a sender can see.
+ *
+ * <p>A UsageCache is only valid for one state of its MondoCommand and one
+ * {@link CompiledFormat}; when either changes, MondoCommand simply starts
+ * a new one.
+ */
+final class UsageCache {
+    private static final int MAX_SCREENS = 256;
+
+    private final long commandVersion;
+    private final CompiledFormat format;
+    private final ConcurrentHashMap<Key, Screen> screens = new ConcurrentHashMap<Key, Screen>();
+
+    UsageCache(long commandVersion, CompiledFormat format) {
+        this.commandVersion = commandVersion;
+        this.format = format;
+    }
+
+    /**
+     * Check if this cache was built for the given command and format state.
+     */
+    boolean isValid(long commandVersion, CompiledFormat format) {
+        return this.commandVersion == commandVersion && this.format == format;
+    }
+
+    /**
+     * Get a usage screen.
+     * @param commandLabel The command label the screen was rendered for.
+     * @param allowed Which subcommands (by position) the sender can use.
+     * @return The screen, or null if not cached.
+     */
+    Screen get(String commandLabel, BitSet allowed) {
+        return screens.get(new Key(commandLabel, allowed));
+    }
+
+    /**
+     * Store a usage screen.
+     */
+    void put(String commandLabel, BitSet allowed, Screen screen) {
+        if (screens.size() >= MAX_SCREENS) {
+            // Label and permission combinations are few in practice; don't let odd ones pile up.
+            screens.clear();
+        }
+        screens.put(new Key(commandLabel, allowed), screen);
+    }
+
+    /**
+     * The usage output for one label and set of subcommands.
+     *
+     * <p>Lines are rendered the first time they're shown, so showing one
+     * page of a large command tree only formats the lines on that page.
+     */
+    static final class Screen {
+        private final String commandLabel;
+        private final String header;
+        private final SubCommand[] subs;
+        private final String[] lines;
+
+        Screen(String commandLabel, String header, SubCommand[] subs) {
+            this.commandLabel = commandLabel;
+            this.header = header;
+            this.subs = subs;
+            this.lines = new String[subs.length];
+        }
+
+        /** Number of usage lines, not counting the header. */
+        int size() {
+            return subs.length;
+        }
+
+        /**
+         * Render some of the usage lines, with the header first.
+         * @param formatter The FormatConfig to render lines with.
+         * @param start The first line to include.
+         * @param end One past the last line to include.
+         * @param footer An extra line to put at the end, or null.
+         * @return An array of lines ready to send.
+         */
+        String[] render(FormatConfig formatter, int start, int end, String footer) {
+            String[] result = new String[end - start + ((footer == null) ? 1 : 2)];
+            result[0] = header;
+            for (int i = start; i < end; i++) {
+                String line = lines[i];
+                if (line == null) {
+                    // Racing threads may both render a line; they'll produce the same string.
+                    line = formatter.formatUsageLine(commandLabel, subs[i]);
+                    lines[i] = line;
+                }
+                result[i - start + 1] = line;
+            }
+            if (footer != null) {
+                result[result.length - 1] = footer;
+            }
+            return result;
+        }
+    }
+
+    private static final class Key {
+        private final String commandLabel;
+        private final BitSet allowed;
+        private final int hash;
+
+        Key(String commandLabel, BitSet allowed) {
+            this.commandLabel = commandLabel;
+            this.allowed = allowed;
+            this.hash = commandLabel.hashCode() * 31 + allowed.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return hash == other.hash && commandLabel.equals(other.commandLabel) && allowed.equals(other.allowed);
+        }
+    }
+}
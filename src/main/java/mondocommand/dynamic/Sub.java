@@ -9,9 +9,17 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 public @interface Sub {
     String name() default "";
+    String[] aliases() default {};
     String description() default "";
     String usage() default "";
     String permission() default "";
     int minArgs() default 0;
     boolean allowConsole() default true;
+    boolean async() default false;
+    /** Milliseconds each sender must wait between uses; 0 for none. */
+    long cooldown() default 0;
+    /** Uses allowed per rateLimitPeriod for each sender; 0 for no limit. */
+    int rateLimit() default 0;
+    /** Milliseconds over which rateLimit uses are allowed. */
+    long rateLimitPeriod() default 60000;
 }
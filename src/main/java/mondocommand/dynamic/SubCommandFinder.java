@@ -1,10 +1,17 @@
 package mondocommand.dynamic;
 
 import java.io.PrintStream;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 
 import mondocommand.CallInfo;
 import mondocommand.MondoCommand;
@@ -53,10 +60,79 @@ public class SubCommandFinder {
         if (subInfo.allowConsole()) {
             sub = sub.allowConsole();
         }
+        if (subInfo.async()) {
+            sub.setAsync(true);
+        }
+        if (subInfo.rateLimit() > 0) {
+            sub.setRateLimit(subInfo.rateLimit(), subInfo.rateLimitPeriod(), TimeUnit.MILLISECONDS);
+        } else if (subInfo.cooldown() > 0) {
+            sub.setCooldown(subInfo.cooldown(), TimeUnit.MILLISECONDS);
+        }
+        for (String alias: subInfo.aliases()) {
+            sub.addAlias(alias);
+        }
         sub.setHandler(buildHandler(handler, method));
     }
 
+    /**
+     * Build a SubHandler which calls a method.
+     *
+     * <p>Public methods of public classes get a generated SubHandler from
+     * {@link LambdaMetafactory}, which calls the method directly, as if it
+     * had been written by hand. Other methods we can access are called
+     * through a MethodHandle, bound to the object unless the method is
+     * static. Either way there's no reflective access check or argument
+     * array on each call, and any return value is ignored. Methods we can't
+     * access (like private ones) still go through reflection, and fail as
+     * they always have.
+     */
     private static SubHandler buildHandler(final Object handler, final Method method) {
+        MethodHandle target;
+        try {
+            target = MethodHandles.lookup().unreflect(method);
+        } catch (IllegalAccessException e) {
+            return buildReflectiveHandler(handler, method);
+        }
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+        MethodType handle = MethodType.methodType(void.class, CallInfo.class);
+        Class<?> cls = method.getDeclaringClass();
+        if (Modifier.isPublic(cls.getModifiers()) && Modifier.isPublic(method.getModifiers()) && isVisible(cls)) {
+            try {
+                if (isStatic) {
+                    CallSite site = LambdaMetafactory.metafactory(
+                        MethodHandles.lookup(), "handle", MethodType.methodType(SubHandler.class),
+                        handle, target, handle
+                    );
+                    return new GeneratedHandler((SubHandler) site.getTarget().invoke());
+                }
+                CallSite site = LambdaMetafactory.metafactory(
+                    MethodHandles.lookup(), "handle", MethodType.methodType(SubHandler.class, cls),
+                    handle, target, handle
+                );
+                return new GeneratedHandler((SubHandler) site.getTarget().invoke(handler));
+            } catch (Throwable e) {
+                // Fall through to the MethodHandle.
+            }
+        }
+        if (!isStatic) {
+            target = target.bindTo(handler);
+        }
+        // Drop any return value, as Method.invoke did, so invokeExact always matches.
+        return new MethodHandleHandler(target.asType(handle));
+    }
+
+    /**
+     * Check if a class can be named from our class loader, which a generated handler needs.
+     */
+    private static boolean isVisible(Class<?> cls) {
+        try {
+            return Class.forName(cls.getName(), false, SubCommandFinder.class.getClassLoader()) == cls;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    private static SubHandler buildReflectiveHandler(final Object handler, final Method method) {
         return new SubHandler() {
             @Override
             public void handle(CallInfo call) throws MondoFailure {
@@ -79,6 +155,50 @@ public class SubCommandFinder {
         };
     }
 
+    /**
+     * Runs a generated handler, reporting anything but a MondoFailure the way reflective calls did.
+     */
+    private static final class GeneratedHandler implements SubHandler {
+        private final SubHandler target;
+
+        GeneratedHandler(SubHandler target) {
+            this.target = target;
+        }
+
+        @Override
+        public void handle(CallInfo call) throws MondoFailure {
+            try {
+                target.handle(call);
+            } catch (MondoFailure e) {
+                throw e;
+            } catch (Throwable e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Calls a method through a MethodHandle bound to its object.
+     */
+    private static final class MethodHandleHandler implements SubHandler {
+        private final MethodHandle target;
+
+        MethodHandleHandler(MethodHandle target) {
+            this.target = target;
+        }
+
+        @Override
+        public void handle(CallInfo call) throws MondoFailure {
+            try {
+                target.invokeExact(call);
+            } catch (MondoFailure e) {
+                throw e;
+            } catch (Throwable e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     /**
      * Reflect the methods on this object, sorted by name.
      * @param handler
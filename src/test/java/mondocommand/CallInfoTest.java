@@ -6,6 +6,14 @@ package mondocommand;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.bukkit.ChatColor;
 import org.junit.Before;
@@ -53,6 +61,28 @@ public class CallInfoTest {
         assertEquals(3, call.getArgs().size());
     }
 
+    @Test(expected=UnsupportedOperationException.class)
+    public void testGetArgsReadOnly() {
+        call.getArgs().add("nope");
+    }
+
+    @Test
+    public void testArgumentOffset() {
+        String[] raw = new String[] {"sub", "one", "two words", "three"};
+        CallInfo c = new CallInfo(player, player, "foo", sub, raw, 1, formatter.compile());
+        assertEquals(3, c.numArgs());
+        assertEquals("one", c.getArg(0));
+        assertEquals("three", c.getArgs().get(2));
+        assertEquals("two words three", c.getJoinedArgsAfter(1));
+        assertEquals("", c.getJoinedArgsAfter(3));
+    }
+
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void testArgumentOffsetBounds() {
+        CallInfo c = new CallInfo(player, player, "foo", sub, new String[] {"sub", "one"}, 1, formatter.compile());
+        c.getArg(1);
+    }
+
     /**
      * Test method for {@link mondocommand.CallInfo#getIntArg(int)}.
      */
@@ -104,4 +134,125 @@ public class CallInfoTest {
         assertEquals("foo " + ChatColor.GREEN.toString() + "45", player.messages.get(0));
     }
 
+    @Test
+    public void testReplyPrefixIsLiteral() {
+        CallInfo c = new CallInfo(player, player, "foo", sub, new ArrayList<String>(),
+                                  new FormatConfig().setReplyPrefix("{GREEN}100%: "));
+        c.reply("{red}%s", "x");
+        assertEquals(ChatColor.GREEN + "100%: " + ChatColor.RED + "x", player.messages.get(0));
+    }
+
+    /**
+     * Test method for {@link mondocommand.CallInfo#batchReplies()}.
+     */
+    @Test
+    public void testBatchReplies() {
+        call.batchReplies();
+        call.reply("one");
+        call.reply(false, "two %d", 2);
+        assertEquals(0, player.messages.size());
+        call.flushReplies();
+        assertEquals(2, player.messages.size());
+        assertEquals(expectedHeader + "one", player.messages.get(0));
+        assertEquals("two 2", player.messages.get(1));
+        call.flushReplies();
+        assertEquals(2, player.messages.size());
+    }
+
+    @Test
+    public void testFanOut() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        try {
+            List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+            for (final String name: new String[] {"stats", "region", "balance"}) {
+                tasks.add(new Callable<String>() {
+                    public String call() {
+                        return name;
+                    }
+                });
+            }
+            assertEquals(Arrays.asList("stats", "region", "balance"), call.fanOut(pool, 5, TimeUnit.SECONDS, tasks));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFanOutFailureCancelsOthers() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        try {
+            List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+            tasks.add(new Callable<String>() {
+                public String call() {
+                    try {
+                        Thread.sleep(10000);
+                    } catch (InterruptedException e) {
+                        cancelled.countDown();
+                    }
+                    return "slow";
+                }
+            });
+            tasks.add(new Callable<String>() {
+                public String call() throws MondoFailure {
+                    throw new MondoFailure("no region");
+                }
+            });
+            try {
+                call.fanOut(pool, 5, TimeUnit.SECONDS, tasks);
+                fail("Expected MondoFailure");
+            } catch (MondoFailure e) {
+                assertEquals("no region", e.getMessage());
+            }
+            assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFanOutTimeout() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(1);
+        try {
+            List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+            tasks.add(new Callable<String>() {
+                public String call() throws InterruptedException {
+                    Thread.sleep(10000);
+                    return "slow";
+                }
+            });
+            try {
+                call.fanOut(pool, 50, TimeUnit.MILLISECONDS, tasks);
+                fail("Expected MondoFailure");
+            } catch (MondoFailure e) {
+                assertEquals("Timed out waiting for a response, please try again.", e.getMessage());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFanOutInterrupted() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(1);
+        try {
+            List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+            tasks.add(new Callable<String>() {
+                public String call() throws InterruptedException {
+                    Thread.sleep(10000);
+                    return "slow";
+                }
+            });
+            Thread.currentThread().interrupt();
+            try {
+                call.fanOut(pool, 5, TimeUnit.SECONDS, tasks);
+                fail("Expected CancellationException");
+            } catch (CancellationException e) {
+                assertTrue(e.getCause() instanceof InterruptedException);
+            }
+            assertTrue(Thread.interrupted());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
 }
@@ -0,0 +1,142 @@
+package mondocommand;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.MissingFormatArgumentException;
+
+import org.bukkit.ChatColor;
+import org.junit.Test;
+
+public class ChatMagicTest {
+
+    @Test
+    public void testColorizeNoArgs() {
+        assertEquals(ChatColor.BLUE + "Hello %s 100%%", ChatMagic.colorize("{BLUE}Hello %s 100%%"));
+    }
+
+    @Test
+    public void testColorizeArgs() {
+        assertEquals(
+            ChatColor.BLUE + "Welcome, " + ChatColor.GREEN + "bob" + ChatColor.BLUE + "! You have 5 items, 100%",
+            ChatMagic.colorize("{BLUE}Welcome, {green}%s{BLUE}! You have %d items, 100%%", "bob", 5)
+        );
+    }
+
+    @Test
+    public void testCompiledTemplateIsCached() {
+        ChatTemplate t = ChatMagic.compile("{RED}cached %s");
+        assertSame(t, ChatMagic.compile("{RED}cached %s"));
+        assertEquals(ChatColor.RED + "cached x", t.render("x"));
+        assertEquals(ChatColor.RED + "cached null", t.render((Object) null));
+    }
+
+    @Test
+    public void testScopeCacheSize() {
+        ColorScope scope = new ColorScope(ChatMagic.getGlobalScope(), 10);
+        assertEquals(10, scope.getCacheSize());
+        for (int i = 0; i < 30; i++) {
+            scope.compile("{RED}template " + i);
+        }
+        TranslationStats stats = scope.getStats(0);
+        assertTrue(stats.getSize() <= 10);
+        assertTrue(stats.getEvictions() >= 20);
+
+        scope.setCacheSize(4);
+        assertTrue(scope.getStats(0).getSize() <= 4);
+
+        FormatConfig config = new FormatConfig().setCacheSize(25);
+        assertEquals(25, config.getColorScope().getCacheSize());
+        assertEquals(ColorScope.DEFAULT_CACHE_SIZE, ChatMagic.getGlobalScope().getCacheSize());
+    }
+
+    @Test
+    public void testFormatterFallback() {
+        assertEquals(String.format("%5s|%x", "ab", 255), ChatMagic.colorize("%5s|%x", "ab", 255));
+        assertEquals(String.format("%d", (Object) null), ChatMagic.colorize("%d", (Object) null));
+    }
+
+    @Test
+    public void testFastFormatterMatchesFormatter() {
+        String[] templates = new String[] {
+            "%s %d %f", "%.2f|%.0f|%.3f", "%2$s %1$s %s", "%5.1f %-4d| %x %S %b", "a %% b %n c"
+        };
+        Object[][] argSets = new Object[][] {
+            {"x", 42, 3.14159},
+            {2.675, 0.5, -0.0},
+            {"one", "two"},
+            {1.25, 7, 255, "up", true},
+            {"unused"},
+        };
+        for (int i = 0; i < templates.length; i++) {
+            assertEquals(String.format(templates[i], argSets[i]), ChatMagic.colorize(templates[i], argSets[i]));
+        }
+        assertEquals(String.format("%d %s", Long.MIN_VALUE, null), ChatMagic.colorize("%d %s", Long.MIN_VALUE, null));
+        assertEquals(String.format("%f %d", new BigDecimal("1.5"), new BigInteger("99")),
+                     ChatMagic.colorize("%f %d", new BigDecimal("1.5"), new BigInteger("99")));
+    }
+
+    @Test(expected=MissingFormatArgumentException.class)
+    public void testMissingArgument() {
+        ChatMagic.colorize("%s and %s", "one");
+    }
+
+    @Test
+    public void testAliasTrieLongestMatch() {
+        Map<String, String> aliases = new HashMap<String, String>();
+        aliases.put("{A}", "1");
+        aliases.put("{AB}", "2");
+        aliases.put("{ABC}", "3");
+        AliasTrie trie = AliasTrie.build(aliases);
+        assertEquals("1 2 3 {ABD} {", trie.translate("{A} {AB} {ABC} {ABD} {"));
+        String untouched = "nothing here";
+        assertSame(untouched, trie.translate(untouched));
+    }
+
+    @Test
+    public void testRegisterAlias() {
+        ChatMagic.registerAlias("{CHATMAGICTEST}", ChatColor.DARK_AQUA);
+        assertEquals(ChatColor.DARK_AQUA + "x", ChatMagic.colorize("{CHATMAGICTEST}x"));
+        ChatMagic.registerDefaultAlias("{CHATMAGICTEST}", ChatColor.RED);
+        assertEquals(ChatColor.DARK_AQUA + "x", ChatMagic.colorize("{CHATMAGICTEST}x"));
+    }
+
+    @Test
+    public void testScopedAliases() {
+        ColorScope scope = new ColorScope(ChatMagic.getGlobalScope());
+        scope.registerAlias("{SCOPED}", ChatColor.GOLD);
+        assertEquals(ChatColor.GOLD + "a" + ChatColor.RED + "b", scope.colorize("{SCOPED}a{RED}b"));
+        assertEquals("{SCOPED}a", ChatMagic.colorize("{SCOPED}a"));
+
+        ChatTemplate before = scope.compile("{SCOPED}a");
+        scope.registerAlias("{SCOPED}", ChatColor.AQUA);
+        assertNotSame(before, scope.compile("{SCOPED}a"));
+        assertEquals(ChatColor.AQUA + "a", scope.colorize("{SCOPED}a"));
+
+        // Changes to the parent scope are seen by the child.
+        ChatMagic.registerAlias("{SCOPEPARENT}", ChatColor.BLUE);
+        assertEquals(ChatColor.BLUE + "x", scope.colorize("{SCOPEPARENT}x"));
+        scope.registerDefaultAlias("{SCOPEPARENT}", ChatColor.RED);
+        assertEquals(ChatColor.BLUE + "x", scope.colorize("{SCOPEPARENT}x"));
+    }
+
+    @Test
+    public void testStats() {
+        ColorScope scope = new ColorScope(ChatMagic.getGlobalScope());
+        scope.colorize("{RED}a");
+        scope.colorize("{RED}a");
+        scope.colorize("{RED}a");
+        scope.colorize("{RED}b");
+        TranslationStats stats = scope.getStats(1);
+        assertEquals(2, stats.getHits());
+        assertEquals(2, stats.getMisses());
+        assertEquals(0, stats.getEvictions());
+        assertEquals(2, stats.getSize());
+        assertEquals(0.5, stats.getHitRate(), 0.0001);
+        assertEquals(1, stats.getTopTemplates().size());
+        assertEquals(Long.valueOf(2), stats.getTopTemplates().get("{RED}a"));
+    }
+}
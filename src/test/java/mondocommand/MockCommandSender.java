@@ -17,6 +17,8 @@ import org.bukkit.plugin.Plugin;
 public class MockCommandSender implements CommandSender {
     public Set<String> permissions = new HashSet<String>();
     public List<String> messages = new ArrayList<String>();
+    public int permissionChecks = 0;
+    public Set<PermissionAttachmentInfo> effectivePermissions = null;
 
     @Override
     public PermissionAttachment addAttachment(Plugin arg0) {
@@ -40,11 +42,12 @@ public class MockCommandSender implements CommandSender {
 
     @Override
     public Set<PermissionAttachmentInfo> getEffectivePermissions() {
-        return null;
+        return effectivePermissions;
     }
 
     @Override
     public boolean hasPermission(String perm) {
+        permissionChecks++;
         return permissions.contains(perm);
     }
 
@@ -100,6 +103,13 @@ public class MockCommandSender implements CommandSender {
         messages.addAll(Arrays.asList(messageArray));
     }
     
+    public void grant(String perm, boolean value) {
+        if (effectivePermissions == null) {
+            effectivePermissions = new HashSet<PermissionAttachmentInfo>();
+        }
+        effectivePermissions.add(new PermissionAttachmentInfo(this, perm, null, value));
+    }
+
     public String stripMessage(int n) {
         return ChatColor.stripColor(messages.get(n));
     }
@@ -32,6 +32,7 @@ import org.bukkit.util.Vector;
 import org.bukkit.scoreboard.Scoreboard;
 
 public class MockPlayer extends MockCommandSender implements Player {
+    private final UUID uniqueId = UUID.randomUUID();
 
     @Override
     public void closeInventory() {
@@ -469,7 +470,7 @@ public class MockPlayer extends MockCommandSender implements Player {
 
     @Override
     public UUID getUniqueId() {
-        return null;
+        return uniqueId;
     }
 
     @Override
@@ -1,7 +1,16 @@
 package mondocommand;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
 import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import org.junit.Test;
 
 public class MondoCommandTest {
@@ -56,6 +65,390 @@ public class MondoCommandTest {
         assertEquals("/foo permissioned permissioned!", player.stripMessage(5));
     }
 
+    @Test
+    public void testCommandHelpCacheInvalidation() {
+        cmd.onCommand(sender, null, "foo", EMPTY_ARGS);
+        cmd.onCommand(sender, null, "foo", EMPTY_ARGS);
+        assertEquals(4, sender.messages.size());
+        assertEquals("foo default desc", sender.stripMessage(3));
+        cmd.listCommands().get(0).setDescription("changed");
+        cmd.onCommand(sender, null, "foo", EMPTY_ARGS);
+        assertEquals("foo default changed", sender.stripMessage(5));
+        sender.permissions.add("fooplugin.perm");
+        cmd.onCommand(sender, null, "foo", EMPTY_ARGS);
+        assertEquals(9, sender.messages.size());
+        assertEquals("foo permissioned permissioned!", sender.stripMessage(8));
+    }
+
+    @Test
+    public void testCustomUsageWriter() {
+        FormatConfig fmt = new FormatConfig() {
+            @Override
+            public void writeUsageLine(CommandSender sender, String commandLabel, SubCommand sub) {
+                sender.sendMessage("custom " + sub.getName());
+            }
+        };
+        MondoCommand c = new MondoCommand(fmt);
+        addSubs(c);
+        c.onCommand(sender, null, "b", EMPTY_ARGS);
+        assertEquals(2, sender.messages.size());
+        assertEquals("custom default", sender.messages.get(1));
+    }
+
+    @Test
+    public void testPaginatedUsage() {
+        MondoCommand c = new MondoCommand(new FormatConfig().setUsagePageSize(2));
+        for (int i = 1; i <= 5; i++) {
+            c.addSub("sub" + i).setDescription("d" + i).allowConsole();
+        }
+        c.onCommand(sender, null, "p", EMPTY_ARGS);
+        assertEquals(4, sender.messages.size());
+        assertEquals("Usage: p <command> [<args>]", sender.stripMessage(0));
+        assertEquals("p sub1 d1", sender.stripMessage(1));
+        assertEquals("p sub2 d2", sender.stripMessage(2));
+        assertEquals("Page 1 of 3. Type p help <page> for more.", sender.stripMessage(3));
+
+        c.onCommand(sender, null, "p", new String[] {"help", "3"});
+        assertEquals(7, sender.messages.size());
+        assertEquals("p sub5 d5", sender.stripMessage(5));
+        assertEquals("Page 3 of 3. Type p help <page> for more.", sender.stripMessage(6));
+
+        c.onCommand(sender, null, "p", new String[] {"help", "99"});
+        assertEquals("Page 3 of 3. Type p help <page> for more.", sender.stripMessage(9));
+    }
+
+    @Test
+    public void testSuggestion() {
+        cmd.onCommand(sender, null, "foo", new String[] {"defualt"});
+        assertEquals(1, sender.messages.size());
+        assertEquals("Unknown command foo defualt. Did you mean default?", sender.stripMessage(0));
+
+        // No permission for the close match, so fall back to usage.
+        cmd.onCommand(sender, null, "foo", new String[] {"permisioned"});
+        assertEquals(3, sender.messages.size());
+        assertEquals("Usage: foo <command> [<args>]", sender.stripMessage(1));
+
+        sender.permissions.add("fooplugin.perm");
+        cmd.onCommand(sender, null, "foo", new String[] {"Permisioned"});
+        assertEquals("Unknown command foo Permisioned. Did you mean permissioned?", sender.stripMessage(3));
+
+        cmd.onCommand(sender, null, "foo", new String[] {"nothinglikeit"});
+        assertEquals("Usage: foo <command> [<args>]", sender.stripMessage(4));
+    }
+
+    @Test
+    public void testTabComplete() {
+        MondoCommand nested = new MondoCommand();
+        nested.addSub("alpha").allowConsole();
+        nested.addSub("beta", "fooplugin.beta").allowConsole();
+        cmd.addSub("Deep").allowConsole().setHandler(nested);
+        cmd.addSub("players-only");
+
+        assertEquals(Arrays.asList("Deep", "default"), cmd.onTabComplete(sender, null, "foo", new String[] {"DE"}));
+        assertEquals(Arrays.asList("Deep", "default"), cmd.onTabComplete(sender, null, "foo", new String[] {""}));
+        assertEquals(Arrays.asList("Deep", "default", "players-only"),
+                     cmd.onTabComplete(new MockPlayer(), null, "foo", new String[] {""}));
+        assertEquals(Arrays.asList("alpha"), cmd.onTabComplete(sender, null, "foo", new String[] {"deep", ""}));
+        assertEquals(Arrays.asList(), cmd.onTabComplete(sender, null, "foo", new String[] {"deep", "b"}));
+        sender.permissions.add("fooplugin.beta");
+        assertEquals(Arrays.asList("beta"), cmd.onTabComplete(sender, null, "foo", new String[] {"deep", "b"}));
+        assertEquals(null, cmd.onTabComplete(sender, null, "foo", new String[] {"default", ""}));
+        assertEquals(null, cmd.onTabComplete(sender, null, "foo", new String[] {"deep", "alpha", "x", ""}));
+        assertEquals(Arrays.asList(), cmd.onTabComplete(sender, null, "foo", new String[] {"nope", ""}));
+    }
+
+    @Test
+    public void testAliases() {
+        cmd.listCommands().get(0).addAlias("dflt").addAlias("Def");
+        cmd.onCommand(sender, null, "foo", new String[] {"DFLT"});
+        assertEquals("This SubHandler does not have an appropriate handler registered.", sender.stripMessage(0));
+
+        cmd.onCommand(sender, null, "foo", EMPTY_ARGS);
+        assertEquals(3, sender.messages.size());
+        assertEquals("foo default desc", sender.stripMessage(2));
+
+        assertEquals(Arrays.asList("default"), cmd.onTabComplete(sender, null, "foo", new String[] {"de"}));
+        assertEquals(Arrays.asList("dflt"), cmd.onTabComplete(sender, null, "foo", new String[] {"df"}));
+
+        try {
+            cmd.listCommands().get(1).addAlias("DEF");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testAsync() {
+        final List<Runnable> asyncTasks = new ArrayList<Runnable>();
+        final List<Runnable> mainTasks = new ArrayList<Runnable>();
+        cmd.setAsyncExecutor(new Executor() {
+            public void execute(Runnable task) {
+                asyncTasks.add(task);
+            }
+        });
+        cmd.setMainThreadExecutor(new Executor() {
+            public void execute(Runnable task) {
+                mainTasks.add(task);
+            }
+        });
+        final List<String> ran = new ArrayList<String>();
+        cmd.addSub("lookup").allowConsole().setAsync(true).setHandler(new SubHandler() {
+            public void handle(CallInfo call) throws MondoFailure {
+                call.reply("one");
+                call.runOnMainThread(new Runnable() {
+                    public void run() {
+                        ran.add("main");
+                    }
+                });
+                call.reply("two");
+            }
+        });
+        cmd.addSub("broken").allowConsole().setAsync(true).setHandler(new SubHandler() {
+            public void handle(CallInfo call) throws MondoFailure {
+                throw new MondoFailure("not found");
+            }
+        });
+
+        cmd.onCommand(sender, null, "foo", new String[] {"lookup"});
+        assertEquals(1, asyncTasks.size());
+        assertEquals(0, mainTasks.size());
+        asyncTasks.remove(0).run();
+        assertEquals(0, sender.messages.size());
+        assertEquals(2, mainTasks.size());
+        mainTasks.remove(0).run();
+        assertEquals(Arrays.asList("main"), ran);
+        mainTasks.remove(0).run();
+        assertEquals(2, sender.messages.size());
+        assertEquals("two", sender.stripMessage(1));
+
+        cmd.onCommand(sender, null, "foo", new String[] {"broken"});
+        asyncTasks.remove(0).run();
+        mainTasks.remove(0).run();
+        assertEquals("not found", sender.stripMessage(2));
+    }
+
+    @Test
+    public void testAsyncLateReply() {
+        final List<Runnable> mainTasks = new ArrayList<Runnable>();
+        cmd.setAsyncExecutor(new Executor() {
+            public void execute(Runnable task) {
+                task.run();
+            }
+        });
+        cmd.setMainThreadExecutor(new Executor() {
+            public void execute(Runnable task) {
+                mainTasks.add(task);
+            }
+        });
+        final List<CallInfo> calls = new ArrayList<CallInfo>();
+        cmd.addSub("later").allowConsole().setAsync(true).setHandler(new SubHandler() {
+            public void handle(CallInfo call) throws MondoFailure {
+                calls.add(call);
+            }
+        });
+        cmd.onCommand(sender, null, "foo", new String[] {"later"});
+        assertEquals(0, mainTasks.size());
+        calls.get(0).reply("done");
+        assertEquals(0, sender.messages.size());
+        assertEquals(1, mainTasks.size());
+        mainTasks.remove(0).run();
+        assertEquals(Arrays.asList("done"), sender.messages);
+    }
+
+    @Test
+    public void testAsyncNested() {
+        final List<String> ran = new ArrayList<String>();
+        MondoCommand middle = new MondoCommand();
+        MondoCommand inner = new MondoCommand();
+        cmd.setAsyncExecutor(namedExecutor("root", ran));
+        cmd.setMainThreadExecutor(namedExecutor("main", new ArrayList<String>()));
+        middle.setAsyncExecutor(namedExecutor("middle", ran));
+        cmd.addSub("middle").allowConsole().setHandler(middle);
+        middle.addSub("inner").allowConsole().setAsync(true).setHandler(inner);
+        inner.addSub("leaf").allowConsole().setHandler(new SubHandler() {
+            public void handle(CallInfo call) throws MondoFailure {
+                ran.add("leaf");
+            }
+        });
+        cmd.onCommand(sender, null, "foo", new String[] {"middle", "inner", "leaf"});
+        assertEquals(Arrays.asList("middle", "leaf"), ran);
+    }
+
+    @Test
+    public void testAsyncNeedsAsyncExecutor() {
+        cmd.setMainThreadExecutor(namedExecutor("main", new ArrayList<String>()));
+        cmd.addSub("lookup").allowConsole().setAsync(true);
+        try {
+            cmd.onCommand(sender, null, "foo", new String[] {"lookup"});
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+        }
+    }
+
+    @Test
+    public void testAsyncNeedsMainThreadExecutor() {
+        final List<String> ran = new ArrayList<String>();
+        cmd.setAsyncExecutor(namedExecutor("async", ran));
+        cmd.addSub("lookup").allowConsole().setAsync(true).setHandler(new SubHandler() {
+            public void handle(CallInfo call) throws MondoFailure {
+                ran.add("lookup");
+            }
+        });
+        try {
+            cmd.onCommand(sender, null, "foo", new String[] {"lookup"});
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+        }
+        assertEquals(Arrays.asList(), ran);
+    }
+
+    private Executor namedExecutor(final String name, final List<String> ran) {
+        return new Executor() {
+            public void execute(Runnable task) {
+                ran.add(name);
+                task.run();
+            }
+        };
+    }
+
+    @Test
+    public void testCooldown() {
+        cmd.addSub("spam").allowConsole().setCooldown(1, TimeUnit.HOURS);
+        cmd.onCommand(sender, null, "foo", new String[] {"spam"});
+        assertEquals("This SubHandler does not have an appropriate handler registered.", sender.stripMessage(0));
+        cmd.onCommand(sender, null, "foo", new String[] {"spam"});
+        assertEquals(2, sender.messages.size());
+        assertTrue(sender.stripMessage(1).startsWith("Please wait 3600 seconds"));
+
+        // Players are tracked separately from the console.
+        MockPlayer player = new MockPlayer();
+        cmd.onCommand(player, null, "foo", new String[] {"spam"});
+        assertEquals("This SubHandler does not have an appropriate handler registered.", player.stripMessage(0));
+    }
+
+    private static CommandInterceptor recorder(final String name, final List<String> log, final boolean proceed) {
+        return new CommandInterceptor() {
+            public boolean before(CallInfo call) {
+                log.add(name + ".before");
+                return proceed;
+            }
+
+            public void after(CallInfo call, Throwable failure) {
+                log.add(name + ".after" + ((failure == null) ? "" : ":" + failure.getMessage()));
+            }
+        };
+    }
+
+    @Test
+    public void testInterceptors() {
+        final List<String> log = new ArrayList<String>();
+        MondoCommand nested = new MondoCommand();
+        nested.addInterceptor(recorder("nested", log, true));
+        nested.addSub("run").allowConsole()
+            .addInterceptor(recorder("sub", log, true))
+            .setHandler(new SubHandler() {
+                public void handle(CallInfo call) throws MondoFailure {
+                    log.add("handler");
+                    throw new MondoFailure("oops");
+                }
+            });
+        nested.addSub("blocked").allowConsole()
+            .addInterceptor(recorder("deny", log, false))
+            .setHandler(new SubHandler() {
+                public void handle(CallInfo call) {
+                    log.add("blocked handler");
+                }
+            });
+        cmd.addInterceptor(recorder("root", log, true));
+        cmd.addSub("nested").allowConsole().setHandler(nested);
+
+        cmd.onCommand(sender, null, "foo", new String[] {"nested", "run"});
+        assertEquals(Arrays.asList(
+            "root.before", "nested.before", "sub.before", "handler",
+            "sub.after:oops", "nested.after:oops", "root.after:oops"
+        ), log);
+        assertEquals("oops", sender.stripMessage(0));
+
+        log.clear();
+        cmd.onCommand(sender, null, "foo", new String[] {"nested", "blocked"});
+        assertEquals(Arrays.asList(
+            "root.before", "nested.before", "deny.before", "nested.after", "root.after"
+        ), log);
+    }
+
+    @Test
+    public void testPermissionCache() {
+        PermissionCache perms = new PermissionCache();
+        cmd.setPermissionCache(perms);
+        sender.permissions.add("fooplugin.perm");
+        cmd.onCommand(sender, null, "foo", EMPTY_ARGS);
+        cmd.onCommand(sender, null, "foo", new String[] {"permissioned"});
+        cmd.onTabComplete(sender, null, "foo", new String[] {"p"});
+        assertEquals(1, sender.permissionChecks);
+
+        sender.permissions.clear();
+        perms.invalidate(sender);
+        cmd.onCommand(sender, null, "foo", new String[] {"permissioned"});
+        assertEquals("You do not have permissions for this command.", sender.stripMessage(sender.messages.size() - 1));
+    }
+
+    @Test
+    public void testPermissionSnapshotInvalidation() {
+        cmd.setPermissionCache(new PermissionCache());
+        SubCommand later = cmd.addSub("later");
+        assertEquals(Arrays.asList("default"), cmd.onTabComplete(sender, null, "foo", new String[] {""}));
+        later.allowConsole();
+        assertEquals(Arrays.asList("default", "later"), cmd.onTabComplete(sender, null, "foo", new String[] {""}));
+        cmd.addSub("newer").allowConsole();
+        assertEquals(Arrays.asList("default", "later", "newer"), cmd.onTabComplete(sender, null, "foo", new String[] {""}));
+        MockPlayer player = new MockPlayer();
+        player.permissions.add("fooplugin.perm");
+        assertEquals(Arrays.asList("default", "later", "newer", "permissioned"),
+                     cmd.onTabComplete(player, null, "foo", new String[] {""}));
+    }
+
+    @Test
+    public void testResolveWildcards() {
+        cmd.addSub("other", "otherplugin.use").allowConsole();
+        PermissionCache perms = new PermissionCache();
+        cmd.setPermissionCache(perms);
+        cmd.setResolveWildcards(true);
+        sender.grant("fooplugin.*", true);
+        sender.permissions.add("otherplugin.use");
+        cmd.onCommand(sender, null, "foo", EMPTY_ARGS);
+        assertEquals(4, sender.messages.size());
+        assertEquals("foo permissioned permissioned!", sender.stripMessage(2));
+        assertEquals(1, sender.permissionChecks);
+
+        cmd.onCommand(sender, null, "foo", new String[] {"permissioned"});
+        cmd.onCommand(sender, null, "foo", new String[] {"other"});
+        assertEquals(1, sender.permissionChecks);
+
+        sender.grant("fooplugin.perm", false);
+        perms.invalidate(sender);
+        cmd.onCommand(sender, null, "foo", new String[] {"permissioned"});
+        assertEquals("You do not have permissions for this command.", sender.stripMessage(sender.messages.size() - 1));
+    }
+
+    @Test
+    public void testResolveWildcardsNeedsCache() {
+        try {
+            cmd.setResolveWildcards(true);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+        cmd.setPermissionCache(new PermissionCache());
+        cmd.setResolveWildcards(true);
+        try {
+            cmd.setPermissionCache(null);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+        cmd.setResolveWildcards(false);
+        cmd.setPermissionCache(null);
+    }
+
     @Test
     public void testCommandDefault() {
         String[] args = new String[] {"default", "misc"};
@@ -83,6 +476,75 @@ public class MondoCommandTest {
         assertEquals("Hi! This SubHandler does not have an appropriate handler registered.", sender.stripMessage(3));
     }
 
+    @Test
+    public void testFormatterColorAlias() {
+        FormatConfig fmt = new FormatConfig().setColorAlias("{HEADER}", ChatColor.AQUA);
+        MondoCommand c = new MondoCommand(fmt);
+        c.onCommand(sender, null, "b", EMPTY_ARGS);
+        cmd.onCommand(sender, null, "foo", EMPTY_ARGS);
+        assertTrue(sender.messages.get(0).startsWith(ChatColor.AQUA + "Usage: b"));
+        assertTrue(sender.messages.get(1).startsWith(ChatColor.GOLD + "Usage: foo"));
+    }
+
+    @Test
+    public void testSetFormatConfig() {
+        cmd.onCommand(sender, null, "foo", new String[] {"permissioned"});
+        cmd.setFormatConfig(new FormatConfig().setPermissionWarning("{RED}Nope."));
+        cmd.onCommand(sender, null, "foo", new String[] {"permissioned"});
+        cmd.onCommand(sender, null, "foo", EMPTY_ARGS);
+        assertEquals("You do not have permissions for this command.", sender.stripMessage(0));
+        assertEquals("Nope.", sender.stripMessage(1));
+        assertEquals("Usage: foo <command> [<args>]", sender.stripMessage(2));
+        cmd.getFormatConfig().setUsageHeading("Help: ");
+        cmd.onCommand(sender, null, "foo", EMPTY_ARGS);
+        assertEquals("Help: foo <command> [<args>]", sender.stripMessage(4));
+    }
+
+    @Test
+    public void testNestedCommands() {
+        MondoCommand top = new MondoCommand();
+        MondoCommand middle = new MondoCommand(new FormatConfig().setReplyPrefix("mid: "));
+        MondoCommand bottom = new MondoCommand();
+        top.addSub("a").setHandler(middle).allowConsole().setDescription("A");
+        middle.addSub("b", "nested.perm").setHandler(bottom).allowConsole().setDescription("B");
+        bottom.addSub("c").setMinArgs(1).setUsage("<x>").allowConsole().setHandler(new SubHandler() {
+            public void handle(CallInfo call) throws MondoFailure {
+                call.reply("%s %s", call.getBaseCommand(), call.getJoinedArgsAfter(0));
+            }
+        });
+        top.onCommand(sender, null, "top", new String[] {"a", "b", "c", "x"});
+        assertEquals("You do not have permissions for this command.", sender.stripMessage(0));
+        sender.permissions.add("nested.perm");
+        top.onCommand(sender, null, "top", new String[] {"a", "b", "c", "x", "y"});
+        assertEquals("top a b x y", sender.stripMessage(1));
+        top.onCommand(sender, null, "top", new String[] {"a", "b", "c"});
+        assertEquals("Usage: top a b c <x>", sender.stripMessage(2));
+        top.onCommand(sender, null, "top", new String[] {"a"});
+        assertEquals("Usage: top a <command> [<args>]", sender.stripMessage(3));
+        assertEquals("top a b B", sender.stripMessage(4));
+    }
+
+    @Test
+    public void testFreeze() {
+        cmd.freeze();
+        assertTrue(cmd.isFrozen());
+        assertTrue(cmd.listCommands().get(0).isFrozen());
+        cmd.onCommand(sender, null, "foo", new String[] {"DEFAULT"});
+        assertEquals("This SubHandler does not have an appropriate handler registered.", sender.stripMessage(0));
+        try {
+            cmd.addSub("late");
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            cmd.listCommands().get(0).setDescription("late");
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
     @Test
     public void testMondoFailure() {
         MondoCommand c = new MondoCommand();
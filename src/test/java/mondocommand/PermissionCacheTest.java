@@ -0,0 +1,54 @@
+package mondocommand;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class PermissionCacheTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testCaching() {
+        PermissionCache cache = new PermissionCache();
+        MockCommandSender sender = new MockCommandSender();
+        sender.permissions.add("a.b");
+        assertTrue(cache.hasPermission(sender, "a.b"));
+        assertTrue(cache.hasPermission(sender, "a.b"));
+        assertFalse(cache.hasPermission(sender, "a.c"));
+        assertFalse(cache.hasPermission(sender, "a.c"));
+        assertEquals(2, sender.permissionChecks);
+    }
+
+    @Test
+    public void testInvalidate() {
+        PermissionCache cache = new PermissionCache();
+        MockCommandSender sender = new MockCommandSender();
+        assertFalse(cache.hasPermission(sender, "a.b"));
+        sender.permissions.add("a.b");
+        assertFalse(cache.hasPermission(sender, "a.b"));
+        cache.invalidate(sender);
+        assertTrue(cache.hasPermission(sender, "a.b"));
+        sender.permissions.clear();
+        long generation = cache.getGeneration();
+        cache.invalidate();
+        assertTrue(cache.getGeneration() > generation);
+        assertFalse(cache.hasPermission(sender, "a.b"));
+        assertEquals(3, sender.permissionChecks);
+    }
+
+    @Test
+    public void testExpiry() {
+        PermissionCache cache = new PermissionCache(10, TimeUnit.SECONDS);
+        MockCommandSender sender = new MockCommandSender();
+        long now = System.nanoTime();
+        assertFalse(cache.hasPermission(sender, "a.b", now));
+        sender.permissions.add("a.b");
+        assertFalse(cache.hasPermission(sender, "a.b", now + 9 * SECOND));
+        assertTrue(cache.hasPermission(sender, "a.b", now + 10 * SECOND));
+        assertEquals(1, cache.size());
+        cache.sweep(now + 30 * SECOND);
+        assertEquals(0, cache.size());
+    }
+}
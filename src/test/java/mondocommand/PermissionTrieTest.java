@@ -0,0 +1,62 @@
+package mondocommand;
+
+import static org.junit.Assert.*;
+
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class PermissionTrieTest {
+    private final SubCommandTable table;
+
+    public PermissionTrieTest() {
+        Map<String, SubCommand> subs = new LinkedHashMap<String, SubCommand>();
+        String[][] defs = {
+            {"build", "housebuilder.build"},
+            {"destroy", "housebuilder.destroy"},
+            {"admin", "housebuilder.admin.reload"},
+            {"top", "housebuilder"},
+            {"free", null},
+            {"other", "otherplugin.use"},
+        };
+        for (String[] def: defs) {
+            subs.put(def[0], new SubCommand(def[0], def[1]));
+        }
+        table = SubCommandTable.build(subs, SubCommandTable.NO_INTERCEPTORS);
+    }
+
+    private String resolve(MockCommandSender sender) {
+        BitSet permitted = new BitSet();
+        BitSet undecided = new BitSet();
+        table.permissionTrie().resolve(sender.getEffectivePermissions(), permitted, undecided);
+        return permitted + " " + undecided;
+    }
+
+    @Test
+    public void testExact() {
+        MockCommandSender sender = new MockCommandSender();
+        sender.grant("HouseBuilder.Build", true);
+        sender.grant("housebuilder.destroy", false);
+        sender.grant("unrelated.node", true);
+        assertEquals("{0, 4} {2, 3, 5}", resolve(sender));
+    }
+
+    @Test
+    public void testWildcard() {
+        MockCommandSender sender = new MockCommandSender();
+        sender.grant("housebuilder.*", true);
+        assertEquals("{0, 1, 2, 4} {3, 5}", resolve(sender));
+    }
+
+    @Test
+    public void testMostSpecificWins() {
+        MockCommandSender sender = new MockCommandSender();
+        sender.grant("*", true);
+        sender.grant("housebuilder.*", false);
+        sender.grant("housebuilder.admin.*", true);
+        sender.grant("housebuilder.build", true);
+        assertEquals("{0, 2, 3, 4, 5} {}", resolve(sender));
+    }
+}
@@ -0,0 +1,48 @@
+package mondocommand;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class RateLimiterTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testCooldown() {
+        RateLimiter limiter = new RateLimiter(1, 10, TimeUnit.SECONDS);
+        long now = System.nanoTime();
+        assertEquals(0, limiter.tryAcquire("bob", now));
+        assertEquals(10 * SECOND, limiter.tryAcquire("bob", now));
+        assertEquals(4 * SECOND, limiter.tryAcquire("bob", now + 6 * SECOND));
+        assertEquals(0, limiter.tryAcquire("alice", now));
+        assertEquals(0, limiter.tryAcquire("bob", now + 10 * SECOND));
+    }
+
+    @Test
+    public void testBurstAndRate() {
+        RateLimiter limiter = new RateLimiter(3, 30, TimeUnit.SECONDS);
+        long now = System.nanoTime();
+        assertEquals(0, limiter.tryAcquire("bob", now));
+        assertEquals(0, limiter.tryAcquire("bob", now));
+        assertEquals(0, limiter.tryAcquire("bob", now));
+        assertEquals(10 * SECOND, limiter.tryAcquire("bob", now));
+        // One use comes back every 10 seconds.
+        assertEquals(0, limiter.tryAcquire("bob", now + 10 * SECOND));
+        assertTrue(limiter.tryAcquire("bob", now + 10 * SECOND) > 0);
+    }
+
+    @Test
+    public void testSweep() {
+        RateLimiter limiter = new RateLimiter(1, 10, TimeUnit.SECONDS);
+        long now = System.nanoTime();
+        limiter.tryAcquire("bob", now);
+        limiter.tryAcquire("alice", now + 5 * SECOND);
+        assertEquals(2, limiter.size());
+        limiter.sweep(now + 11 * SECOND);
+        assertEquals(1, limiter.size());
+        assertEquals(4 * SECOND, limiter.tryAcquire("alice", now + 11 * SECOND));
+        assertEquals(0, limiter.tryAcquire("bob", now + 11 * SECOND));
+    }
+}
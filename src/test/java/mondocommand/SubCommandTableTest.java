@@ -0,0 +1,108 @@
+package mondocommand;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class SubCommandTableTest {
+
+    @Test
+    public void testLookup() {
+        Map<String, SubCommand> subs = new LinkedHashMap<String, SubCommand>();
+        for (int i = 0; i < 200; i++) {
+            subs.put("cmd" + i, new SubCommand("cmd" + i, null));
+        }
+        SubCommandTable table = SubCommandTable.build(subs, SubCommandTable.NO_INTERCEPTORS);
+        assertEquals(200, table.size());
+        for (int i = 0; i < 200; i++) {
+            assertSame(subs.get("cmd" + i), table.get("cmd" + i));
+            assertEquals("cmd" + i, table.at(i).getName());
+        }
+        assertNull(table.get("cmd200"));
+        assertNull(table.get(""));
+    }
+
+    @Test
+    public void testSameHashCode() {
+        assertEquals("an".hashCode(), "c0".hashCode());
+        assertEquals("warp0".hashCode(), "warnn".hashCode());
+        Map<String, SubCommand> subs = new LinkedHashMap<String, SubCommand>();
+        for (String name: new String[] {"an", "c0", "warp0", "warnn"}) {
+            subs.put(name, new SubCommand(name, null));
+        }
+        SubCommandTable table = SubCommandTable.build(subs, SubCommandTable.NO_INTERCEPTORS);
+        assertEquals(0, table.find("an"));
+        assertEquals(1, table.find("C0"));
+        assertEquals(2, table.find("warp0"));
+        assertEquals(3, table.find("warnn"));
+        assertEquals(-1, table.find("am"));
+        assertTrue(table.slotCount() <= 16);
+    }
+
+    @Test
+    public void testCompact() {
+        Map<String, SubCommand> subs = new LinkedHashMap<String, SubCommand>();
+        for (int i = 0; i < 1000; i++) {
+            subs.put("cmd" + i, new SubCommand("cmd" + i, null));
+        }
+        SubCommandTable table = SubCommandTable.build(subs, SubCommandTable.NO_INTERCEPTORS);
+        assertTrue(table.slotCount() <= 4 * 1000);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, table.find("CMD" + i));
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        SubCommandTable table = SubCommandTable.build(new LinkedHashMap<String, SubCommand>(), SubCommandTable.NO_INTERCEPTORS);
+        assertEquals(0, table.size());
+        assertNull(table.get("anything"));
+    }
+
+    @Test
+    public void testCaseInsensitive() {
+        Map<String, SubCommand> subs = new LinkedHashMap<String, SubCommand>();
+        SubCommand item = new SubCommand("Item", null);
+        subs.put(SubCommandTable.fold("Item"), item);
+        SubCommandTable table = SubCommandTable.build(subs, SubCommandTable.NO_INTERCEPTORS);
+        assertSame(item, table.get("item"));
+        assertSame(item, table.get("ITEM"));
+        assertSame(item, table.get("iTeM"));
+        assertNull(table.get("items"));
+        assertNull(table.get("\u0131tem"));
+    }
+
+    @Test
+    public void testSuggest() {
+        Map<String, SubCommand> subs = new LinkedHashMap<String, SubCommand>();
+        for (String name: new String[] {"add", "remove", "list", "rename", "a"}) {
+            subs.put(name, new SubCommand(name, null));
+        }
+        SubCommandTable table = SubCommandTable.build(subs, SubCommandTable.NO_INTERCEPTORS);
+        assertEquals("[-1, 1, -1, -1, -1]", Arrays.toString(table.suggest("REMOV", 2)));
+        assertEquals("[1, -1, -1, -1, -1]", Arrays.toString(table.suggest("ad", 1)));
+        assertNull(table.suggest("zzzzzz", 2));
+        assertNull(table.suggest("b", 1));
+        assertEquals(2, SuggestionTree.distance("defualt", "default"));
+        assertEquals(3, SuggestionTree.distance("", "abc"));
+    }
+
+    @Test
+    public void testAliases() {
+        Map<String, SubCommand> subs = new LinkedHashMap<String, SubCommand>();
+        SubCommand teleport = new SubCommand("teleport", null).addAlias("TP").addAlias("list");
+        SubCommand list = new SubCommand("list", null);
+        subs.put("teleport", teleport);
+        subs.put("list", list);
+        SubCommandTable table = SubCommandTable.build(subs, SubCommandTable.NO_INTERCEPTORS);
+        assertEquals(2, table.size());
+        assertEquals(3, table.nameCount());
+        assertSame(teleport, table.get("tp"));
+        assertSame(list, table.get("list"));
+        assertEquals("[1, -1]", Arrays.toString(table.suggest("tpp", 1)));
+    }
+}
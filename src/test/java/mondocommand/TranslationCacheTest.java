@@ -0,0 +1,61 @@
+package mondocommand;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TranslationCacheTest {
+
+    @Test
+    public void testGetAndPut() {
+        TranslationCache cache = new TranslationCache(10);
+        assertNull(cache.get("foo", 0));
+        ChatTemplate t = ChatTemplate.parse("foo");
+        assertSame(t, cache.put("foo", t, 0));
+        assertSame(t, cache.get("foo", 0));
+        assertSame(t, cache.put("foo", ChatTemplate.parse("foo"), 0));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testStaleGeneration() {
+        TranslationCache cache = new TranslationCache(10);
+        cache.put("foo", ChatTemplate.parse("old"), 1);
+        assertNull(cache.get("foo", 2));
+        ChatTemplate fresh = ChatTemplate.parse("new");
+        assertSame(fresh, cache.put("foo", fresh, 2));
+        assertSame(fresh, cache.get("foo", 2));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testSetMaxSize() {
+        TranslationCache cache = new TranslationCache(100);
+        for (int i = 0; i < 50; i++) {
+            cache.put("t" + i, ChatTemplate.parse("t"), 0);
+        }
+        assertEquals(50, cache.size());
+        cache.setMaxSize(20);
+        assertEquals(20, cache.getMaxSize());
+        assertTrue(cache.size() <= 20);
+        for (int i = 0; i < 50; i++) {
+            cache.put("u" + i, ChatTemplate.parse("u"), 0);
+            assertTrue(cache.size() <= 20);
+        }
+    }
+
+    @Test
+    public void testEvictionKeepsHotEntries() {
+        TranslationCache cache = new TranslationCache(10);
+        cache.put("hot", ChatTemplate.parse("hot"), 0);
+        for (int i = 0; i < 5; i++) {
+            cache.get("hot", 0);
+        }
+        for (int i = 0; i < 50; i++) {
+            cache.put("cold" + i, ChatTemplate.parse("cold"), 0);
+            assertTrue(cache.size() <= 10);
+            cache.get("hot", 0);
+        }
+        assertNotNull(cache.get("hot", 0));
+    }
+}
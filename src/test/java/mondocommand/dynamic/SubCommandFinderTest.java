@@ -3,10 +3,13 @@ package mondocommand.dynamic;
 import java.io.ByteArrayOutputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.List;
 
 import mondocommand.CallInfo;
+import mondocommand.MockCommandSender;
 import mondocommand.MondoCommand;
+import mondocommand.MondoFailure;
 import mondocommand.SubCommand;
 
 import org.apache.commons.lang.StringUtils;
@@ -41,9 +44,131 @@ public class SubCommandFinderTest {
         assertEquals("foo!", bar.getUsage());
         assertEquals(0, bar.getMinArgs());
         assertEquals(true, bar.isConsoleAllowed());
+        assertEquals(0, bar.getAliases().size());
+        assertEquals(Arrays.asList("bz", "baz"), commands.get(1).getAliases());
 
     }
     
+    @Test
+    public void testHandlers() {
+        MondoCommand base = new MondoCommand();
+        PublicHandler publicHandler = new PublicHandler();
+        PackageHandler packageHandler = new PackageHandler();
+        base.addSub("public").setHandler(registered(publicHandler));
+        base.addSub("package").setHandler(registered(packageHandler));
+        MockCommandSender sender = new MockCommandSender();
+        for (int i = 0; i < 3; i++) {
+            base.onCommand(sender, null, "test", new String[] {"public", "go", "arg" + i});
+            base.onCommand(sender, null, "test", new String[] {"package", "go"});
+        }
+        assertEquals("arg2", publicHandler.lastArg);
+        assertEquals(3, publicHandler.calls);
+        assertEquals(3, packageHandler.calls);
+        assertEquals(0, sender.messages.size());
+
+        base.onCommand(sender, null, "test", new String[] {"public", "fail"});
+        base.onCommand(sender, null, "test", new String[] {"package", "fail"});
+        assertEquals(Arrays.asList("public failed", "package failed"), Arrays.asList(
+            sender.stripMessage(0), sender.stripMessage(1)
+        ));
+    }
+
+    private MondoCommand registered(Object handler) {
+        MondoCommand cmd = new MondoCommand();
+        new SubCommandFinder(cmd).registerMethods(handler);
+        return cmd;
+    }
+
+    @Test
+    public void testStaticAndNonVoidHandlers() {
+        MondoCommand base = new MondoCommand();
+        base.addSub("public").setHandler(registered(new ReturningHandler()));
+        base.addSub("package").setHandler(registered(new PackageReturningHandler()));
+        MockCommandSender sender = new MockCommandSender();
+        ReturningHandler.calls = 0;
+        PackageReturningHandler.calls = 0;
+        for (String sub: new String[] {"public", "package"}) {
+            for (String name: new String[] {"counted", "shared", "fail"}) {
+                base.onCommand(sender, null, "test", new String[] {sub, name});
+            }
+        }
+        assertEquals(2, ReturningHandler.calls);
+        assertEquals(2, PackageReturningHandler.calls);
+        assertEquals(2, sender.messages.size());
+        assertEquals("static failed", sender.stripMessage(0));
+        assertEquals("static failed", sender.stripMessage(1));
+    }
+
+    public static class ReturningHandler {
+        static int calls = 0;
+
+        @Sub
+        public boolean counted(CallInfo call) {
+            calls++;
+            return true;
+        }
+
+        @Sub
+        public static int shared(CallInfo call) {
+            return ++calls;
+        }
+
+        @Sub
+        public static String fail(CallInfo call) throws MondoFailure {
+            throw new MondoFailure("static failed");
+        }
+    }
+
+    static class PackageReturningHandler {
+        static int calls = 0;
+
+        @Sub
+        boolean counted(CallInfo call) {
+            calls++;
+            return true;
+        }
+
+        @Sub
+        static int shared(CallInfo call) {
+            return ++calls;
+        }
+
+        @Sub
+        static String fail(CallInfo call) throws MondoFailure {
+            throw new MondoFailure("static failed");
+        }
+    }
+
+    public static class PublicHandler {
+        int calls = 0;
+        String lastArg;
+
+        @Sub(minArgs=1)
+        public void go(CallInfo call) {
+            calls++;
+            lastArg = call.getArg(0);
+        }
+
+        @Sub
+        public void fail(CallInfo call) throws MondoFailure {
+            throw new MondoFailure("public failed");
+        }
+    }
+
+    static class PackageHandler {
+        int calls = 0;
+
+        @Sub
+        void go(CallInfo call) {
+            calls++;
+        }
+
+        @Sub
+        public void fail(CallInfo call) throws MondoFailure {
+            throw new MondoFailure("package failed");
+        }
+    }
+
     class OverrideFinder extends SubCommandFinder {
         public OverrideFinder(MondoCommand base, OutputStream stream) {
             super(base);
@@ -62,7 +187,7 @@ public class SubCommandFinderTest {
             
         }
         
-        @Sub(name="baz1")
+        @Sub(name="baz1", aliases={"bz", "baz"})
         public void baz(CallInfo call) {
             
         }